@@ -0,0 +1,109 @@
+package benchmark;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import state.Board;
+import state.Board.Connection;
+
+/**
+ * Times {@link Board#getLongestRouteLengthForPlayer(int)} on boards like the
+ * ones at the end of a playout: every player keeps claiming random open
+ * connections until they are out of cars or nothing is left.
+ *
+ * Usage: LongestRouteBenchmark [config file] [number of players] [number of
+ * boards] [number of rounds]
+ */
+public class LongestRouteBenchmark {
+
+	public static void main(final String[] args) throws IOException, ParseException {
+		final String configFile = (args.length > 0) ? args[0] : "src/config/base.json";
+		final int numPlayers = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+		final int numBoards = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+		final int numRounds = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+
+		final JSONObject obj = (JSONObject) new JSONParser().parse(new FileReader(configFile));
+		final long numCarsPerPlayer = (Long) obj.get("numCarsPerPlayer");
+
+		final Board emptyBoard = new Board(numPlayers);
+		for (final Object connectionObj : (JSONArray) obj.get("connections")) {
+			final JSONObject connectionJSONObj = (JSONObject) connectionObj;
+
+			emptyBoard.addConnection((String) connectionJSONObj.get("START"), (String) connectionJSONObj.get("END"),
+					(Long) connectionJSONObj.get("LENGTH"), (String) connectionJSONObj.get("COLOR"));
+		}
+
+		final Random random = new Random(0);
+
+		// the first round only warms up the JIT
+		for (int round = 0; round <= numRounds; round++) {
+			final Board[] boards = new Board[numBoards];
+			for (int i = 0; i < numBoards; i++) {
+				boards[i] = getFinishedBoard(emptyBoard, numPlayers, numCarsPerPlayer, random);
+			}
+
+			long totalLength = 0;
+			final long start = System.nanoTime();
+
+			for (final Board board : boards) {
+				for (int player = 0; player < numPlayers; player++) {
+					totalLength += board.getLongestRouteLengthForPlayer(player);
+				}
+			}
+
+			final long elapsed = System.nanoTime() - start;
+
+			if (round > 0) {
+				System.out.printf("Round %d: %.3f us per player (average longest route %.2f)%n", round,
+						elapsed / 1000.0 / (numBoards * numPlayers), (double) totalLength / (numBoards * numPlayers));
+			}
+		}
+	}
+
+	private static Board getFinishedBoard(final Board emptyBoard, final int numPlayers, final long numCarsPerPlayer,
+			final Random random) {
+		final Board board = new Board(emptyBoard);
+		final long[] numCarsRemaining = new long[numPlayers];
+		final boolean[] isDone = new boolean[numPlayers];
+		int numDone = 0;
+
+		for (int player = 0; player < numPlayers; player++) {
+			numCarsRemaining[player] = numCarsPerPlayer;
+		}
+
+		for (int player = 0; numDone < numPlayers; player = (player + 1) % numPlayers) {
+			if (isDone[player]) {
+				continue;
+			}
+
+			// pick one of the open connections the player can still afford at random
+			Connection choice = null;
+			int numChoices = 0;
+
+			for (int i = 0; i < board.getNumConnections(); i++) {
+				final Connection connection = board.getConnection(i);
+
+				if (board.getOwner(connection) == -1 && !board.isForbiddenForPlayer(connection, player)
+						&& connection.getLength() <= numCarsRemaining[player] && random.nextInt(++numChoices) == 0) {
+					choice = connection;
+				}
+			}
+
+			if (choice == null) {
+				isDone[player] = true;
+				numDone++;
+			} else {
+				board.giveOwnershipToPlayer(choice, player, numPlayers);
+				numCarsRemaining[player] -= choice.getLength();
+			}
+		}
+
+		return board;
+	}
+}
@@ -2,16 +2,24 @@ package data;
 
 public class DestinationTicket {
 
+	// the position of the ticket in the list of every ticket in the game, which
+	// decks use to keep sets of tickets as bits
+	private final int index;
 	private final String start;
 	private final String end;
 	private final long points;
 
-	public DestinationTicket(final String start, final String end, final long points) {
+	public DestinationTicket(final int index, final String start, final String end, final long points) {
+		this.index = index;
 		this.start = start;
 		this.end = end;
 		this.points = points;
 	}
 
+	public int getIndex() {
+		return this.index;
+	}
+
 	public String getStart() {
 		return this.start;
 	}
@@ -2,11 +2,16 @@ package driver;
 
 import java.util.Comparator;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import data.DestinationTicket;
+import mcts.ConsoleSearchListener;
 import mcts.MCTS;
+import mcts.api.SearchBudget;
 import state.Board;
+import state.CardColor;
 import state.ColorDeck;
 import state.DestinationTicketDeck;
 import state.Player;
@@ -14,6 +19,15 @@ import state.TicketToRideState;
 
 public class GameDriver {
 
+	private static final int NUM_SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final SearchBudget SEARCH_BUDGET = SearchBudget.ofSeconds(30).withSimulationTimeout(2,
+			TimeUnit.SECONDS);
+
+	// every search of a game is seeded from this, one after another, so a game
+	// searched with a budget of iterations can be played again
+	private static final long SEARCH_SEED = 0;
+
 	public static void runGame(final int numPlayers, final long numCarsPerPlayer, final ColorDeck colorDeck,
 			final DestinationTicketDeck destinationTicketDeck, final Board board, final long longestRoutePoints,
 			final long globetrotterPoints) {
@@ -30,9 +44,13 @@ public class GameDriver {
 				destinationTicketDeck, board, longestRoutePoints, globetrotterPoints);
 		gameState.dealStartingHands(aiPlayer, in);
 
+		final ConsoleSearchListener listener = new ConsoleSearchListener();
+		final SplittableRandom seeds = new SplittableRandom(SEARCH_SEED);
+
 		// AI needs to figure out which destination tickets to keep
 		System.out.println("AI is thinking...");
-		gameState = (TicketToRideState) MCTS.search(gameState, 30, 2);
+		gameState = (TicketToRideState) MCTS.search(gameState, SEARCH_BUDGET, NUM_SEARCH_THREADS, listener,
+				seeds.nextLong());
 		gameState.printPlayerInfo(aiPlayer);
 		gameState.getNumDestinationTicketsForHumanPlayers(aiPlayer, in);
 
@@ -42,7 +60,10 @@ public class GameDriver {
 			if (gameState.getCurrentPlayer() == aiPlayer) {
 				gameState.replenishFaceUp(in);
 				System.out.println("AI is thinking...");
-				gameState = (TicketToRideState) MCTS.search(gameState, 30, 2);
+				// the other players' turns are never in the tree (their tickets are
+				// unknown), so each turn is searched from scratch
+				gameState = (TicketToRideState) MCTS.search(gameState, SEARCH_BUDGET, NUM_SEARCH_THREADS, listener,
+						seeds.nextLong());
 				gameState.resolveUnknownsForPlayerManually(aiPlayer, in);
 				gameState.printPlayerInfo(aiPlayer);
 
@@ -120,7 +141,8 @@ public class GameDriver {
 								optColor = in.next().toUpperCase();
 								in.nextLine(); // consume new line
 							}
-							gameState.buildConnectionForCurrentHumanPlayer(connection, optColor, wilds);
+							gameState.buildConnectionForCurrentHumanPlayer(connection, CardColor.valueOf(optColor),
+									wilds);
 						}
 					}
 					break;
@@ -132,7 +154,7 @@ public class GameDriver {
 					if (color1.equals("TOP")) {
 						gameState.giveCurrentHumanPlayerTopColor();
 					} else {
-						gameState.giveCurrentHumanPlayerFaceUp(color1);
+						gameState.giveCurrentHumanPlayerFaceUp(CardColor.valueOf(color1));
 					}
 
 					gameState.replenishFaceUp(in);
@@ -145,7 +167,7 @@ public class GameDriver {
 						if (color2.equals("TOP")) {
 							gameState.giveCurrentHumanPlayerTopColor();
 						} else {
-							gameState.giveCurrentHumanPlayerFaceUp(color2);
+							gameState.giveCurrentHumanPlayerFaceUp(CardColor.valueOf(color2));
 						}
 					}
 
@@ -173,8 +195,9 @@ public class GameDriver {
 		in.close();
 
 		System.out.println();
+		System.out.println("Ending player = " + gameState.getLastPlayer());
 		System.out.println("Scores:");
-		for (final Player player : gameState.getPlayers()) {
+		for (final Player player : gameState.getScoredPlayers()) {
 			System.out.println();
 			System.out.println(
 					player.getScore() + " with " + player.getNumCompletedTickets() + " completed tickets out of:");
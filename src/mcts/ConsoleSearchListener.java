@@ -0,0 +1,30 @@
+package mcts;
+
+import mcts.api.SearchListener;
+
+/**
+ * This listener prints a summary of every search to the console, for when a
+ * person is watching the search play.
+ *
+ * @author Aaron Tetens
+ */
+public class ConsoleSearchListener implements SearchListener {
+
+	@Override
+	public void onSubtreeReused(final int numIterations) {
+		System.out.println("Reusing " + numIterations + " iterations from the previous search");
+	}
+
+	@Override
+	public void onSearchFinished(final int numIterations, final long numPlayouts, final int numThreads,
+			final double elapsedSeconds) {
+		System.out.println("Performed " + numIterations + " iterations (" + numPlayouts + " playouts, "
+				+ String.format("%.1f", numPlayouts / elapsedSeconds) + " playouts/sec) on " + numThreads
+				+ " thread(s) in " + elapsedSeconds + " seconds");
+	}
+
+	@Override
+	public void onMoveSuggested(final double expectedValue) {
+		System.out.println("Expected value = " + expectedValue + "%");
+	}
+}
@@ -1,12 +1,21 @@
 package mcts;
 
-import mcts.api.GameState;
+import mcts.api.MoveGameState;
+import mcts.api.SearchBudget;
+import mcts.api.SearchListener;
 import mcts.tree.MCTree;
+import mcts.tree.RootParallelSearch;
+import mcts.tree.SearchSession;
 
 /**
  * This is the class that drives the tree search. Classes that wish to use this
- * project's tree search will simply call {@link MCTS#search(GameState, int)} to
- * find the suggested move.
+ * project's tree search will simply call
+ * {@link MCTS#search(MoveGameState, int, int)} to find the suggested move.
+ * 
+ * Every other kind of search runs within a {@link SearchBudget}, reports its
+ * progress (such as the number of playouts per second) to a
+ * {@link SearchListener}, and makes its random choices from a given seed (the
+ * search above seeds itself from the clock).
  * 
  * @author Aaron Tetens
  */
@@ -25,8 +34,104 @@ public class MCTS {
 	 * @return The GameState that is the result of performing the move suggested by
 	 *         the search
 	 */
-	public static GameState search(final GameState initialState, final int seconds, final int simulationTimeout) {
+	public static MoveGameState search(final MoveGameState initialState, final int seconds,
+			final int simulationTimeout) {
 		final MCTree tree = new MCTree(initialState, seconds, simulationTimeout);
 		return tree.search();
 	}
+
+	/**
+	 * This method drives a root-parallel tree search: one independent tree is
+	 * searched per thread within the given budget, and the results at the root are
+	 * combined to pick the move. With more than one thread, the iterations and
+	 * nodes of the budget are shared out evenly between the trees. The given
+	 * listener is told about the progress of the search (e.g. a
+	 * {@link ConsoleSearchListener}, or {@link SearchListener#NONE}).
+	 * 
+	 * Every random choice is made by generators split from one with the given
+	 * seed. On a single thread, a search with a budget of iterations makes the same
+	 * choices every time it is run from the same state.
+	 * 
+	 * @param initialState The state from which to start the search
+	 * @param budget       How much the search may do before it suggests a move
+	 * @param numThreads   The number of trees to search at the same time
+	 * @param listener     The listener to tell about the search
+	 * @param seed         The seed of the random number generators
+	 * @return The GameState that is the result of performing the move suggested by
+	 *         the search
+	 */
+	public static MoveGameState search(final MoveGameState initialState, final SearchBudget budget,
+			final int numThreads, final SearchListener listener, final long seed) {
+		if (numThreads <= 1) {
+			final MCTree tree = new MCTree(initialState, budget, 1, listener, seed);
+			return tree.search();
+		}
+
+		final RootParallelSearch search = new RootParallelSearch(initialState, budget, numThreads, listener, seed);
+		return search.search();
+	}
+
+	/**
+	 * This method drives a tree-parallel tree search: the given number of threads
+	 * all search one shared tree within the given budget, which results in a
+	 * single deeper tree instead of several shallow ones.
+	 * 
+	 * @param initialState The state from which to start the search
+	 * @param budget       How much the search may do before it suggests a move
+	 * @param numThreads   The number of threads searching the tree
+	 * @param listener     The listener to tell about the search
+	 * @param seed         The seed of the random number generators
+	 * @return The GameState that is the result of performing the move suggested by
+	 *         the search
+	 */
+	public static MoveGameState searchSharedTree(final MoveGameState initialState, final SearchBudget budget,
+			final int numThreads, final SearchListener listener, final long seed) {
+		final MCTree tree = new MCTree(initialState, budget, 1, listener, seed);
+		return tree.search(numThreads);
+	}
+
+	/**
+	 * This method drives a leaf-parallel tree search: every node chosen during the
+	 * search is simulated the given number of times in parallel, and the combined
+	 * result is backpropogated once. The listener is also told the number of
+	 * playouts per second.
+	 * 
+	 * @param initialState The state from which to start the search
+	 * @param budget       How much the search may do before it suggests a move
+	 * @param batchSize    The number of simulations to run from each chosen node
+	 * @param listener     The listener to tell about the search
+	 * @param seed         The seed of the random number generators
+	 * @return The GameState that is the result of performing the move suggested by
+	 *         the search
+	 */
+	public static MoveGameState searchLeafParallel(final MoveGameState initialState, final SearchBudget budget,
+			final int batchSize, final SearchListener listener, final long seed) {
+		final MCTree tree = new MCTree(initialState, budget, batchSize, listener, seed);
+		return tree.search();
+	}
+
+	/**
+	 * This method starts a search session that keeps its tree between searches, so
+	 * that the statistics for the current position carry over from one move to the
+	 * next. The session searches its tree with the given number of threads, each
+	 * search runs within the given budget (whose node cap also bounds the tree kept
+	 * between searches), and the given listener is told about every search.
+	 * 
+	 * Statistics only carry over if the current position is in the tree, and
+	 * states whose {@link MoveGameState#getLegalMoves(int[])} returns no moves are
+	 * never expanded. For Ticket to Ride, that is every turn of a player whose
+	 * destination tickets are unknown, so the tree is only reused between the AI's
+	 * own consecutive decisions (such as keeping tickets after drawing them), not
+	 * across the moves of the other players.
+	 * 
+	 * @param budget     How much each search may do before it suggests a move
+	 * @param numThreads The number of threads searching the tree
+	 * @param listener   The listener to tell about the searches
+	 * @param seed       The seed that the generator of each search is split from
+	 * @return The new search session
+	 */
+	public static SearchSession startSession(final SearchBudget budget, final int numThreads,
+			final SearchListener listener, final long seed) {
+		return new SearchSession(budget, numThreads, listener, seed);
+	}
 }
@@ -1,12 +1,16 @@
 package mcts.api;
 
 import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * Any game that wishes to use this MCTS implementation must implement its game
  * state in this way so that the operations necessary for the search may be
  * carried out.
  * 
+ * The search itself works on {@link MoveGameState}, which adds moves that can
+ * be applied to and undone on a single state.
+ * 
  * @author Aaron Tetens
  */
 public interface GameState {
@@ -23,15 +27,22 @@ public interface GameState {
 	public List<GameState> getNextStates();
 
 	/**
+	 * @param random The random number generator to choose with
 	 * @return A single possible next game state, chosen randomly (for simulation
 	 *         purposes)
 	 */
-	public GameState getRandomNextState();
+	public GameState getRandomNextState(SplittableRandom random);
 
 	/**
 	 * @return A list of the ids of the players who have won in this position - a
 	 *         position that represents an unfinished game should return an empty
-	 *         list
+	 *         list (the list may be shared, so callers must not change it)
 	 */
 	public List<Integer> getWinningPlayers();
+
+	/**
+	 * @return A deep copy of this game state that shares no mutable data with it
+	 *         (so that separate search threads never touch the same state)
+	 */
+	public GameState copy();
 }
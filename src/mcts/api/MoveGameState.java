@@ -0,0 +1,87 @@
+package mcts.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * This is the move-based version of {@link GameState}, and the one that the
+ * search itself uses. Instead of creating a new state for every move, the search
+ * keeps a single mutable state per thread and walks it up and down the tree by
+ * applying and undoing moves.
+ *
+ * Moves are encoded as ints in whatever way suits the game; the search only
+ * ever passes back moves that the state itself produced.
+ *
+ * @author Aaron Tetens
+ */
+public interface MoveGameState extends GameState {
+
+	/**
+	 * @return An upper bound on the number of moves
+	 *         {@link #getLegalMoves(int[])} can return (for sizing move buffers)
+	 */
+	public int getMaxNumMoves();
+
+	/**
+	 * Writes all of the moves that can be made from this state into the given
+	 * buffer (for node expansion purposes).
+	 *
+	 * @param moves The buffer to write the moves into, at least
+	 *              {@link #getMaxNumMoves()} long
+	 * @return The number of moves that were written - a state that cannot be
+	 *         expanded should return 0
+	 */
+	public int getLegalMoves(int[] moves);
+
+	/**
+	 * Makes the given move on this state.
+	 *
+	 * @param move A move returned by {@link #getLegalMoves(int[])} for this state
+	 */
+	public void apply(int move);
+
+	/**
+	 * Makes a single move, chosen randomly, on this state (for simulation
+	 * purposes). Any information that is hidden from the searching player may be
+	 * filled in randomly as part of the move.
+	 *
+	 * @param random The random number generator to make every choice with, so
+	 *               that a generator with the same seed gives the same moves
+	 * @return The move that was made, so that it can be undone
+	 */
+	public int applyRandomMove(SplittableRandom random);
+
+	/**
+	 * Takes back the most recent move that was made on this state and not undone
+	 * yet, restoring the state exactly as it was before.
+	 *
+	 * @param move The move being undone
+	 */
+	public void undo(int move);
+
+	@Override
+	public MoveGameState copy();
+
+	@Override
+	public default List<GameState> getNextStates() {
+		final int[] moves = new int[this.getMaxNumMoves()];
+		final int numMoves = this.getLegalMoves(moves);
+		final List<GameState> nextStates = new ArrayList<>(numMoves);
+
+		for (int i = 0; i < numMoves; i++) {
+			final MoveGameState nextState = this.copy();
+			nextState.apply(moves[i]);
+			nextStates.add(nextState);
+		}
+
+		return nextStates;
+	}
+
+	@Override
+	public default GameState getRandomNextState(final SplittableRandom random) {
+		final MoveGameState nextState = this.copy();
+		nextState.applyRandomMove(random);
+		return nextState;
+	}
+}
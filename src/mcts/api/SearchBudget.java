@@ -0,0 +1,167 @@
+package mcts.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sets how much work a search may do before it has to suggest a
+ * move: a time limit and a number of iterations, whichever runs out first. It
+ * can also cap the number of nodes in the tree, after which the tree stops
+ * growing but the search goes on, and it sets how long a single simulation may
+ * run before it is considered "dead" (in a state where the game can never end).
+ *
+ * The clock is only read once every so many iterations (and every so many
+ * moves within a simulation), so a search may run over its time by up to that
+ * many iterations. A budget is never changed; the with methods return a new
+ * one.
+ *
+ * @author Aaron Tetens
+ */
+public final class SearchBudget {
+
+	/**
+	 * The value of a limit that is never reached.
+	 */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	private static final long DEFAULT_SIMULATION_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+	private static final int DEFAULT_CHECK_INTERVAL = 4;
+
+	private final long timeLimitNanos;
+	private final long maxIterations;
+	private final long maxNodes;
+	private final long simulationTimeoutNanos;
+	private final int checkInterval;
+
+	private SearchBudget(final long timeLimitNanos, final long maxIterations, final long maxNodes,
+			final long simulationTimeoutNanos, final int checkInterval) throws IllegalArgumentException {
+		if (timeLimitNanos <= 0 || maxIterations <= 0 || maxNodes <= 0 || simulationTimeoutNanos <= 0) {
+			throw new IllegalArgumentException("Every limit of a search budget must be positive!");
+		}
+
+		// the node cap alone would never end a search
+		if (timeLimitNanos == UNLIMITED && maxIterations == UNLIMITED) {
+			throw new IllegalArgumentException("A search budget must limit either the time or the iterations!");
+		}
+
+		if (checkInterval <= 0) {
+			throw new IllegalArgumentException("The check interval must be positive: " + checkInterval);
+		}
+
+		this.timeLimitNanos = timeLimitNanos;
+		this.maxIterations = maxIterations;
+		this.maxNodes = maxNodes;
+		this.simulationTimeoutNanos = simulationTimeoutNanos;
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * @return A budget of the given amount of time, with no other limits (and a
+	 *         simulation timeout of 2 seconds)
+	 */
+	public static SearchBudget ofTime(final long duration, final TimeUnit unit) {
+		return new SearchBudget(unit.toNanos(duration), UNLIMITED, UNLIMITED, DEFAULT_SIMULATION_TIMEOUT_NANOS,
+				DEFAULT_CHECK_INTERVAL);
+	}
+
+	public static SearchBudget ofSeconds(final long seconds) {
+		return ofTime(seconds, TimeUnit.SECONDS);
+	}
+
+	public static SearchBudget ofMillis(final long millis) {
+		return ofTime(millis, TimeUnit.MILLISECONDS);
+	}
+
+	public static SearchBudget ofNanos(final long nanos) {
+		return ofTime(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return A budget of the given number of iterations, with no other limits
+	 *         (and a simulation timeout of 2 seconds) - on a single thread with a
+	 *         seeded search, this makes the search repeatable
+	 */
+	public static SearchBudget ofIterations(final long maxIterations) {
+		return new SearchBudget(UNLIMITED, maxIterations, UNLIMITED, DEFAULT_SIMULATION_TIMEOUT_NANOS,
+				DEFAULT_CHECK_INTERVAL);
+	}
+
+	public SearchBudget withTimeLimit(final long duration, final TimeUnit unit) {
+		return new SearchBudget(unit.toNanos(duration), this.maxIterations, this.maxNodes,
+				this.simulationTimeoutNanos, this.checkInterval);
+	}
+
+	public SearchBudget withMaxIterations(final long maxIterations) {
+		return new SearchBudget(this.timeLimitNanos, maxIterations, this.maxNodes, this.simulationTimeoutNanos,
+				this.checkInterval);
+	}
+
+	/**
+	 * Caps the size of the tree. Once it holds this many nodes, no more nodes are
+	 * expanded, and the rest of the search simulates from the leaves it has. The
+	 * cap is a count of nodes, not a number of bytes, so it only bounds the memory
+	 * of the tree as far as the size of a node does; it has to be picked with the
+	 * heap in mind. The tree may go over it by the children of one node per
+	 * searching thread, and the root is always expanded.
+	 *
+	 * @param maxNodes The number of nodes at which the tree stops growing (a tree
+	 *                 kept from an earlier search starts with its nodes counted,
+	 *                 and is not kept if it is already over the cap)
+	 */
+	public SearchBudget withMaxNodes(final long maxNodes) {
+		return new SearchBudget(this.timeLimitNanos, this.maxIterations, maxNodes, this.simulationTimeoutNanos,
+				this.checkInterval);
+	}
+
+	public SearchBudget withSimulationTimeout(final long duration, final TimeUnit unit) {
+		return new SearchBudget(this.timeLimitNanos, this.maxIterations, this.maxNodes, unit.toNanos(duration),
+				this.checkInterval);
+	}
+
+	/**
+	 * @param checkInterval The number of iterations (or moves of a simulation)
+	 *                      between reads of the clock
+	 */
+	public SearchBudget withCheckInterval(final int checkInterval) {
+		return new SearchBudget(this.timeLimitNanos, this.maxIterations, this.maxNodes, this.simulationTimeoutNanos,
+				checkInterval);
+	}
+
+	public long getTimeLimitNanos() {
+		return this.timeLimitNanos;
+	}
+
+	public long getMaxIterations() {
+		return this.maxIterations;
+	}
+
+	public long getMaxNodes() {
+		return this.maxNodes;
+	}
+
+	public long getSimulationTimeoutNanos() {
+		return this.simulationTimeoutNanos;
+	}
+
+	public int getCheckInterval() {
+		return this.checkInterval;
+	}
+
+	/**
+	 * @param startNanos The value of {@link System#nanoTime()} when the search
+	 *                   started
+	 * @return Whether the time of the search has run out
+	 */
+	public boolean isOutOfTime(final long startNanos) {
+		return this.timeLimitNanos != UNLIMITED && System.nanoTime() - startNanos >= this.timeLimitNanos;
+	}
+
+	/**
+	 * @param startNanos The value of {@link System#nanoTime()} when the simulation
+	 *                   started
+	 * @return Whether the simulation has run for too long
+	 */
+	public boolean isSimulationOutOfTime(final long startNanos) {
+		return this.simulationTimeoutNanos != UNLIMITED
+				&& System.nanoTime() - startNanos >= this.simulationTimeoutNanos;
+	}
+}
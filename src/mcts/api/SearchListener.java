@@ -0,0 +1,47 @@
+package mcts.api;
+
+/**
+ * This interface is told about the progress of a search, so that callers can
+ * report on it however they like. Every method does nothing by default, and
+ * none of them are called while the search threads are running, so the search
+ * itself never waits on them.
+ *
+ * @author Aaron Tetens
+ */
+public interface SearchListener {
+
+	/**
+	 * A listener that ignores everything.
+	 */
+	public static final SearchListener NONE = new SearchListener() {
+	};
+
+	/**
+	 * Called when a search starts from a subtree kept from the previous search.
+	 *
+	 * @param numIterations The number of iterations already run on the subtree
+	 */
+	public default void onSubtreeReused(final int numIterations) {
+	}
+
+	/**
+	 * Called once all of the search threads are done.
+	 *
+	 * @param numIterations  The number of iterations that were executed
+	 * @param numPlayouts    The number of simulations that were run
+	 * @param numThreads     The number of threads that searched
+	 * @param elapsedSeconds How long the search took
+	 */
+	public default void onSearchFinished(final int numIterations, final long numPlayouts, final int numThreads,
+			final double elapsedSeconds) {
+	}
+
+	/**
+	 * Called with the move the search suggests, just before it is returned.
+	 *
+	 * @param expectedValue The average result of the simulations through the
+	 *                      move, as a percentage of a win
+	 */
+	public default void onMoveSuggested(final double expectedValue) {
+	}
+}
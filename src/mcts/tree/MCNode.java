@@ -1,99 +1,174 @@
 package mcts.tree;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import mcts.api.GameState;
+import mcts.api.MoveGameState;
 
 /**
- * This class represents a node within the MCTree. A node stores the game state
- * that it represents, as well as the number of wins found on it (for
- * exploitation), the number of iterations run on it (for exploration), and its
- * parent (for backpropogation).
- * 
+ * This class represents a node within the MCTree. A node stores the move that
+ * leads to it from its parent (the game state it represents is rebuilt by
+ * applying the moves on the path from the root), as well as the number of wins
+ * found on it (for exploitation), the number of iterations run on it (for
+ * exploration), and its parent (for backpropogation).
+ *
+ * All of the statistics are updated atomically and a node is only ever expanded
+ * once, so several threads may search the same tree at the same time.
+ *
  * @author Aaron Tetens
  */
 class MCNode {
 
-	private final GameState gameState;
-	private final MCNode parent;
-	private final List<MCNode> children;
+	private final int move;
+	private MCNode parent;
 
-	private double numWins; // numWins is a double to keep track of winning ties with other players
-	private int numIterations;
-	private boolean hasImmediateLoss;
+	// the player who made the move, known once the move has been applied to a state
+	private volatile int lastPlayer;
+	private final AtomicBoolean isExpanded;
 
-	MCNode(final GameState gameState, final MCNode parent) {
-		this.gameState = gameState;
+	// empty until the node has been expanded, and never modified after that
+	private volatile List<MCNode> children;
+
+	// numWins is a double to keep track of winning ties with other players, stored
+	// as its raw bits so that it can be updated with compare-and-set
+	private final AtomicLong numWinsBits;
+	private final AtomicInteger numIterations;
+
+	// the number of threads currently searching below this node
+	private final AtomicInteger virtualLoss;
+
+	private volatile boolean hasImmediateLoss;
+
+	MCNode(final int move, final MCNode parent) {
+		this.move = move;
 		this.parent = parent;
-		this.children = new ArrayList<>();
-		this.numWins = 0.0;
-		this.numIterations = 0;
+		this.lastPlayer = -1;
+		this.isExpanded = new AtomicBoolean(false);
+		this.children = Collections.emptyList();
+		this.numWinsBits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+		this.numIterations = new AtomicInteger(0);
+		this.virtualLoss = new AtomicInteger(0);
 		this.hasImmediateLoss = false;
 	}
 
 	/**
-	 * This method adds a child node for each possible next game state.
+	 * This method adds a child node for each possible move. Only the first call on
+	 * a node does anything; if several threads try to expand the same node,
+	 * exactly one of them will do so.
+	 *
+	 * @param state The game state this node represents
+	 * @param moves A buffer to generate the moves into
+	 * @return Whether or not this call expanded the node
 	 */
-	void expand() throws IllegalStateException {
-		if (!this.children.isEmpty()) {
+	boolean expand(final MoveGameState state, final int[] moves) {
+		if (!this.isExpanded.compareAndSet(false, true)) {
+			return false;
+		}
+
+		this.children = this.createChildren(moves, state.getLegalMoves(moves));
+		return true;
+	}
+
+	/**
+	 * This method adds a child node for each of the given moves, in order. It is
+	 * used when the moves of a node have already been generated elsewhere.
+	 *
+	 * @param moves The moves to create children for
+	 */
+	void expand(final int[] moves) throws IllegalStateException {
+		if (!this.isExpanded.compareAndSet(false, true)) {
 			throw new IllegalStateException("Tried to expand a non-leaf node!");
 		}
 
-		final List<GameState> nextStates = this.gameState.getNextStates();
+		this.children = this.createChildren(moves, moves.length);
+	}
+
+	private List<MCNode> createChildren(final int[] moves, final int numMoves) {
+		final List<MCNode> newChildren = new ArrayList<>(numMoves);
 
-		for (final GameState nextState : nextStates) {
-			this.children.add(new MCNode(nextState, this));
+		for (int i = 0; i < numMoves; i++) {
+			newChildren.add(new MCNode(moves[i], this));
 		}
+
+		return newChildren;
 	}
 
 	/**
+	 * @param random The random number generator of the thread that is searching
 	 * @return A random child node
 	 */
-	MCNode getRandomChild() {
-		final int randomIndex = (int) (Math.random() * this.children.size());
-		return this.children.get(randomIndex);
+	MCNode getRandomChild(final SplittableRandom random) {
+		final List<MCNode> currentChildren = this.children;
+		final int randomIndex = random.nextInt(currentChildren.size());
+		return currentChildren.get(randomIndex);
 	}
 
 	/**
-	 * @param simulationTimeout
-	 *            The amount of seconds that a simulation may run before being
-	 *            considered "dead" (the game is in a state where it can never be
-	 *            finished)
-	 * @return A list of integers representing the players who won the random
-	 *         playout
+	 * Adds the result of a single simulation through this node.
+	 *
+	 * @param result The players who won the simulation
 	 */
-	List<Integer> simulate(final int simulationTimeout) {
-		GameState curr = this.gameState;
+	void addResult(final List<Integer> result) {
+		for (int i = 0; i < result.size(); i++) {
+			if (result.get(i) == this.lastPlayer) {
+				this.addWins(10.0 / result.size());
+				break;
+			}
+		}
 
-		final long startTime = System.currentTimeMillis();
+		this.numIterations.incrementAndGet();
+	}
 
-		// while no one has won, pick a random next possible state
-		while (curr.getWinningPlayers().isEmpty()) {
-			curr = curr.getRandomNextState();
+	/**
+	 * Adds the combined results of a batch of simulations through this node.
+	 *
+	 * @param results The results of the simulations
+	 */
+	void addResults(final SimulationResults results) {
+		final double winValue = results.getWinsForPlayer(this.lastPlayer);
 
-			// a timeout counts as a win for nobody
-			if (System.currentTimeMillis() > startTime + (1000 * simulationTimeout)) {
-				return new ArrayList<>();
-			}
+		if (winValue > 0) {
+			this.addWins(winValue);
 		}
 
-		return curr.getWinningPlayers();
+		this.numIterations.addAndGet(results.getNumPlayouts());
+	}
+
+	private void addWins(final double winValue) {
+		long oldBits;
+		long newBits;
+		do {
+			oldBits = this.numWinsBits.get();
+			newBits = Double.doubleToRawLongBits(Double.longBitsToDouble(oldBits) + winValue);
+		} while (!this.numWinsBits.compareAndSet(oldBits, newBits));
 	}
 
 	/**
-	 * Adds the result of the simulation to this node. If this node is among a group
-	 * of tying winners, the value of the win is split evenly.
-	 * 
-	 * @param result
-	 *            The result of the simulation.
+	 * Marks that a thread is currently searching below this node, so that other
+	 * threads treat it as a loss in progress and prefer other branches.
 	 */
-	void addResult(final List<Integer> result) {
-		if (result.contains(this.gameState.getLastPlayer())) {
-			this.numWins += (10.0 / result.size());
-		}
+	void addVirtualLoss() {
+		this.virtualLoss.incrementAndGet();
+	}
 
-		this.numIterations++;
+	/**
+	 * Undoes {@link #addVirtualLoss()} once the thread's result has been
+	 * backpropogated.
+	 */
+	void removeVirtualLoss() {
+		this.virtualLoss.decrementAndGet();
+	}
+
+	/**
+	 * @return The number of threads currently searching below this node
+	 */
+	int getVirtualLoss() {
+		return this.virtualLoss.get();
 	}
 
 	/**
@@ -112,6 +187,14 @@ class MCNode {
 		this.hasImmediateLoss = true;
 	}
 
+	/**
+	 * Cuts this node off from its parent so that it can become the root of a new
+	 * tree (and the rest of the old tree can be garbage collected).
+	 */
+	void detach() {
+		this.parent = null;
+	}
+
 	/**
 	 * @return The parent of this node
 	 */
@@ -119,6 +202,19 @@ class MCNode {
 		return this.parent;
 	}
 
+	/**
+	 * @return The number of nodes in the subtree of this node, including itself
+	 */
+	long countNodes() {
+		long count = 1;
+
+		for (final MCNode child : this.children) {
+			count += child.countNodes();
+		}
+
+		return count;
+	}
+
 	/**
 	 * @return A list of the child nodes of this node
 	 */
@@ -130,20 +226,39 @@ class MCNode {
 	 * @return The number of wins that have passed through this node
 	 */
 	double getNumWins() {
-		return this.numWins;
+		return Double.longBitsToDouble(this.numWinsBits.get());
 	}
 
 	/**
 	 * @return The number of iterations that have passed through this node
 	 */
 	int getNumIterations() {
-		return this.numIterations;
+		return this.numIterations.get();
+	}
+
+	/**
+	 * @return The move that leads from the parent to this node
+	 */
+	int getMove() {
+		return this.move;
+	}
+
+	/**
+	 * Records the player who made the move of this node (this must happen before
+	 * any results are added to it).
+	 *
+	 * @param lastPlayer The id of the player
+	 */
+	void setLastPlayer(final int lastPlayer) {
+		if (this.lastPlayer != lastPlayer) {
+			this.lastPlayer = lastPlayer;
+		}
 	}
 
 	/**
-	 * @return The game state that this node represents
+	 * @return The id of the player who made the move of this node
 	 */
-	GameState getGameState() {
-		return this.gameState;
+	int getLastPlayer() {
+		return this.lastPlayer;
 	}
 }
@@ -1,11 +1,30 @@
 package mcts.tree;
 
+import java.util.ArrayList;
 import java.util.List;
-
-import mcts.api.GameState;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mcts.api.MoveGameState;
+import mcts.api.SearchBudget;
+import mcts.api.SearchListener;
 
 /**
- * This class stores the tree structure and performs the tree search.
+ * This class stores the tree structure and performs the tree search. The search
+ * may be run by several threads on the same tree; virtual loss is used to make
+ * them spread out over different branches. Each selected node may also be
+ * simulated several times in parallel, with the results backpropogated together.
+ * 
+ * The tree only stores moves. Every thread searches with its own copy of the
+ * initial state, applying the moves on the way down and undoing them once the
+ * iteration is done; the initial state itself is never modified.
  * 
  * @author Aaron Tetens
  */
@@ -14,14 +33,77 @@ public class MCTree {
 	// exploration constant
 	private static final double C = Math.sqrt(2);
 
+	private final MoveGameState rootState;
 	private final MCNode root;
-	private final int seconds;
-	private final int simulationTimeout;
+	private final SearchBudget budget;
+	private final int playoutBatchSize;
+	private final AtomicLong numPlayouts;
+	private final SearchListener listener;
+
+	// how much of the budget has been used, shared by every thread searching the
+	// tree - once the time or iterations run out, the flag tells the other threads
+	// to stop, while the number of nodes only stops the tree from growing
+	private final AtomicLong numIterationsStarted;
+	private final AtomicLong numNodes;
+	private volatile boolean isBudgetSpent;
+
+	// the generator that the generator of each searching thread is split from
+	// (only used by the thread that starts the search)
+	private final SplittableRandom random;
+
+	/**
+	 * Creates a tree whose random choices are seeded from the clock, so that it
+	 * searches differently every time.
+	 */
+	public MCTree(final MoveGameState initialState, final int seconds, final int simulationTimeout) {
+		this(initialState, SearchBudget.ofSeconds(seconds).withSimulationTimeout(simulationTimeout, TimeUnit.SECONDS),
+				1, SearchListener.NONE, System.nanoTime());
+	}
+
+	/**
+	 * @param budget           How much the search may do before it suggests a move
+	 * @param playoutBatchSize The number of simulations to run in parallel from
+	 *                         each selected node
+	 * @param listener         The listener to tell about the search
+	 * @param seed             The seed of every random choice the search makes, so
+	 *                         that a search on one thread can be repeated exactly
+	 *                         (given a budget of iterations)
+	 */
+	public MCTree(final MoveGameState initialState, final SearchBudget budget, final int playoutBatchSize,
+			final SearchListener listener, final long seed) {
+		this(initialState, new MCNode(0, null), budget, playoutBatchSize, listener, new SplittableRandom(seed));
+	}
+
+	/**
+	 * Creates a tree from a node (and its subtree) that was kept from an earlier
+	 * search. The node must already be detached from its old parent, and the given
+	 * state must be the one it represents. The nodes of the subtree count towards
+	 * the node cap of the budget.
+	 */
+	MCTree(final MoveGameState initialState, final MCNode root, final SearchBudget budget,
+			final int playoutBatchSize, final SearchListener listener, final SplittableRandom random) {
+		this.rootState = initialState;
+		this.root = root;
+		this.root.setLastPlayer(initialState.getLastPlayer());
+		this.budget = budget;
+		this.playoutBatchSize = Math.max(playoutBatchSize, 1);
+		this.numPlayouts = new AtomicLong(0);
+		this.listener = listener;
+		this.numIterationsStarted = new AtomicLong(0);
+		this.numNodes = new AtomicLong(root.countNodes());
+		this.isBudgetSpent = false;
+		this.random = random;
+	}
 
-	public MCTree(final GameState initialState, final int seconds, final int simulationTimeout) {
-		this.root = new MCNode(initialState, null);
-		this.seconds = seconds;
-		this.simulationTimeout = simulationTimeout;
+	/**
+	 * Creates a tree whose root has already been expanded into the given moves. The
+	 * children of the root will be in the same order as the given moves.
+	 */
+	MCTree(final MoveGameState initialState, final int[] rootMoves, final SearchBudget budget,
+			final SplittableRandom random) {
+		this(initialState, new MCNode(0, null), budget, 1, SearchListener.NONE, random);
+		this.root.expand(rootMoves);
+		this.numNodes.addAndGet(rootMoves.length);
 	}
 
 	/**
@@ -31,47 +113,244 @@ public class MCTree {
 	 * @return The GameState that is the result of performing the move suggested by
 	 *         the search.
 	 */
-	public GameState search() {
-		// add the first set of children to the root node
-		this.root.expand();
+	public MoveGameState search() {
+		return this.search(1);
+	}
+
+	/**
+	 * Perform MCTS from the root node with the given number of threads all
+	 * searching this same tree. The number of iterations that are executed depends
+	 * on the value given when this MCTree was created.
+	 * 
+	 * @param numThreads The number of threads that should search the tree
+	 * @return The GameState that is the result of performing the move suggested by
+	 *         the search.
+	 */
+	public MoveGameState search(final int numThreads) throws IllegalStateException {
+		return this.getResultOf(this.searchForMove(numThreads));
+	}
+
+	/**
+	 * @param child A child of the root
+	 * @return A new GameState that is the result of performing the move of the
+	 *         given child on the initial state
+	 */
+	MoveGameState getResultOf(final MCNode child) {
+		final MoveGameState result = this.rootState.copy();
+		result.apply(child.getMove());
+		return result;
+	}
+
+	/**
+	 * Perform MCTS from the root node with the given number of threads.
+	 * 
+	 * @param numThreads The number of threads that should search the tree
+	 * @return The child of the root that represents the suggested move
+	 */
+	MCNode searchForMove(final int numThreads) throws IllegalStateException {
+		// add the first set of children to the root node (unless they are still there
+		// from an earlier search)
+		if (this.root.expand(this.rootState, new int[this.rootState.getMaxNumMoves()])) {
+			this.numNodes.addAndGet(this.root.getChildren().size());
+		}
+
+		final long startTime = System.nanoTime();
+		final int numIterations = (numThreads <= 1) ? this.iterate() : this.iterateInParallel(numThreads);
+
+		final double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+		this.listener.onSearchFinished(numIterations, this.numPlayouts.get(), Math.max(numThreads, 1),
+				elapsedSeconds);
+
+		// choose the node with the most simulations
+		return this.suggestMove();
+	}
+
+	/**
+	 * Runs {@link #iterate()} on the given number of threads at the same time.
+	 * 
+	 * @param numThreads The number of threads that should search the tree
+	 * @return The total number of iterations that were executed
+	 */
+	private int iterateInParallel(final int numThreads) throws IllegalStateException {
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		final List<Future<Integer>> futures = new ArrayList<>();
+
+		for (int i = 0; i < numThreads; i++) {
+			// split here rather than in the threads, as the generator is not thread safe
+			final SplittableRandom random = this.random.split();
+			futures.add(executor.submit(() -> this.iterate(random)));
+		}
 
-		// perform for given amount of time
-		final long startTime = System.currentTimeMillis();
 		int numIterations = 0;
 
-		while (System.currentTimeMillis() < startTime + (1000 * this.seconds)) {
+		try {
+			for (final Future<Integer> future : futures) {
+				numIterations += future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the search threads!", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("A search thread failed!", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return numIterations;
+	}
+
+	/**
+	 * Runs selection, simulation and backpropogation on an already expanded root
+	 * until the budget given when this MCTree was created is spent. Several threads
+	 * may search the tree at once, but each needs a generator of its own, so this
+	 * method (which splits one off) may only be called by one thread at a time.
+	 * 
+	 * @return The number of iterations that were executed
+	 */
+	int iterate() {
+		return this.iterate(this.random.split());
+	}
+
+	/**
+	 * Runs {@link #iterate()} with the given random number generator, which must
+	 * only be used by the calling thread.
+	 * 
+	 * @return The number of iterations that were executed
+	 */
+	private int iterate(final SplittableRandom random) {
+		final SearchContext context = new SearchContext(this.rootState.copy(), random);
+		final MoveGameState state = context.getState();
+		final long startTime = System.nanoTime();
+		int numIterations = 0;
+
+		while (this.claimIteration(numIterations, startTime)) {
 			// selection + possible expansion
-			final MCNode choice = this.selectNode();
+			final MCNode choice = this.selectNode(context);
 
-			// simulation
-			final List<Integer> result = choice.simulate(this.simulationTimeout);
+			// simulation + backpropogation (a single playout is backpropogated as it is)
+			if (this.playoutBatchSize == 1) {
+				final List<Integer> result = context.simulate(this.budget);
+				this.numPlayouts.incrementAndGet();
+				this.update(choice, state.getWinningPlayers(), result);
+			} else {
+				this.update(choice, state.getWinningPlayers(), this.simulateBatch(context));
+			}
 
-			// backpropogation
-			this.update(choice, result);
+			// walk the state back up to the root
+			for (MCNode curr = choice; curr != this.root; curr = curr.getParent()) {
+				state.undo(curr.getMove());
+			}
 
 			numIterations++;
 		}
 
-		System.out.println("Performed " + numIterations + " iterations in "
-				+ (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+		return numIterations;
+	}
 
-		// choose the node with the most simulations
-		return this.suggestMove();
+	/**
+	 * Checks the budget before an iteration, and claims the iteration if there is
+	 * enough of it left. Once the time or the iterations run out, every thread
+	 * stops at its next check.
+	 * 
+	 * @param numIterations The number of iterations the calling thread has run
+	 * @param startTime     The value of {@link System#nanoTime()} when the calling
+	 *                      thread started searching
+	 * @return Whether the calling thread may run another iteration
+	 */
+	private boolean claimIteration(final int numIterations, final long startTime) {
+		if (this.isBudgetSpent) {
+			return false;
+		}
+
+		// the clock is only read every so many iterations
+		if ((numIterations % this.budget.getCheckInterval() == 0 && this.budget.isOutOfTime(startTime))
+				|| this.numIterationsStarted.getAndIncrement() >= this.budget.getMaxIterations()) {
+			this.isBudgetSpent = true;
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * This method runs a batch of simulations from the current state of the given
+	 * context. The simulations are split into chunks that are run in parallel on
+	 * the common ForkJoinPool, each on its own copy of the state.
+	 * 
+	 * @param context The context of the thread that selected the node
+	 * @return The combined results of the simulations, held by the given context
+	 *         until its next batch
+	 */
+	private SimulationResults simulateBatch(final SearchContext context) {
+		final SimulationResults results = context.getResults();
+		results.clear();
+
+		final int numChunks = Math.min(this.playoutBatchSize, ForkJoinPool.getCommonPoolParallelism());
+		final List<ForkJoinTask<SimulationResults>> tasks = new ArrayList<>();
+
+		for (int i = 0; i < numChunks; i++) {
+			final int chunkSize = this.playoutBatchSize / numChunks + ((i < this.playoutBatchSize % numChunks) ? 1 : 0);
+			final SearchContext chunkContext = new SearchContext(context.getState().copy(),
+					context.getRandom().split());
+
+			tasks.add(ForkJoinPool.commonPool().submit(() -> {
+				final SimulationResults chunkResults = chunkContext.getResults();
+				for (int j = 0; j < chunkSize; j++) {
+					chunkResults.add(chunkContext.simulate(this.budget));
+				}
+
+				return chunkResults;
+			}));
+		}
+
+		for (final ForkJoinTask<SimulationResults> task : tasks) {
+			results.add(task.join());
+		}
+
+		this.numPlayouts.addAndGet(results.getNumPlayouts());
+		return results;
+	}
+
+	/**
+	 * @return The number of simulations run on this tree so far
+	 */
+	long getNumPlayouts() {
+		return this.numPlayouts.get();
+	}
+
+	/**
+	 * @return The number of nodes in this tree
+	 */
+	long getNumNodes() {
+		return this.numNodes.get();
+	}
+
+	/**
+	 * @return The children of the root node, in the order they were expanded
+	 */
+	List<MCNode> getRootChildren() {
+		return this.root.getChildren();
 	}
 
 	/**
 	 * This method uses the UCB1 formula to pick successive child nodes until an
 	 * unvisited leaf node is reached. Expansion will happen automatically as
-	 * necessary.
+	 * necessary. Every node on the chosen path is given a virtual loss until the
+	 * result of the simulation is backpropogated, and its move is applied to the
+	 * state of the given context.
 	 * 
+	 * @param context The context of the thread that is searching
 	 * @return The node selected for simulation
 	 */
-	private MCNode selectNode() {
+	private MCNode selectNode(final SearchContext context) {
 		// pick successive child nodes until we find a leaf node
 		MCNode curr = this.root;
+		curr.addVirtualLoss();
 
 		while (!curr.getChildren().isEmpty()) {
 			curr = this.pickChild(curr);
+			this.descend(curr, context.getState());
 		}
 
 		// if the leaf node has never been visited before, return it for simulation
@@ -80,14 +359,33 @@ public class MCTree {
 		}
 
 		// if the leaf node has been visited before, expand it and return a random child
-		// (or return it if players win at the node)
-		curr.expand();
+		// (or return it if players win at the node, if another thread is still
+		// expanding it, or if the tree has reached its node cap)
+		if (this.numNodes.get() < this.budget.getMaxNodes()
+				&& curr.expand(context.getState(), context.getMoveBuffer())) {
+			this.numNodes.addAndGet(curr.getChildren().size());
+		}
 
 		if (curr.getChildren().isEmpty()) {
 			return curr;
 		}
 
-		return curr.getRandomChild();
+		final MCNode child = curr.getRandomChild(context.getRandom());
+		this.descend(child, context.getState());
+
+		return child;
+	}
+
+	/**
+	 * Moves the search down into the given node.
+	 * 
+	 * @param node  The node being moved into
+	 * @param state The state of the thread that is searching
+	 */
+	private void descend(final MCNode node, final MoveGameState state) {
+		node.addVirtualLoss();
+		state.apply(node.getMove());
+		node.setLastPlayer(state.getLastPlayer());
 	}
 
 	/**
@@ -101,8 +399,8 @@ public class MCTree {
 		MCNode bestChild = null;
 
 		for (final MCNode child : parent.getChildren()) {
-			// if the child has no iterations yet, pick it
-			if (child.getNumIterations() == 0) {
+			// if the child has no iterations yet (and no other thread is on it), pick it
+			if (child.getNumIterations() + child.getVirtualLoss() == 0) {
 				return child;
 			}
 
@@ -118,7 +416,8 @@ public class MCTree {
 	}
 
 	/**
-	 * This method computes the UCB1 value for a given node.
+	 * This method computes the UCB1 value for a given node. Each thread currently
+	 * searching below the node counts as an iteration without a win.
 	 * 
 	 * @param node The node to evaluate
 	 * @return The UCB1 score for the given node
@@ -128,44 +427,81 @@ public class MCTree {
 			return -Double.MAX_VALUE;
 		}
 
-		final double exploitation = node.getNumWins() / node.getNumIterations();
-		final double exploration = C
-				* Math.sqrt(Math.log(node.getParent().getNumIterations()) / node.getNumIterations());
+		final int numVisits = node.getNumIterations() + node.getVirtualLoss();
+
+		// the parent's virtual loss includes the thread that is picking the child
+		final MCNode parent = node.getParent();
+		final int numParentVisits = parent.getNumIterations() + parent.getVirtualLoss() - 1;
+
+		final double exploitation = node.getNumWins() / numVisits;
+		final double exploration = C * Math.sqrt(Math.log(numParentVisits) / numVisits);
 
 		return exploitation + exploration;
 	}
 
 	/**
-	 * This method performs backpropogation to update the simulated node, as well as
-	 * all of its parents in the tree.
+	 * This method performs backpropogation of a single simulation to update the
+	 * simulated node, as well as all of its parents in the tree, and removes the
+	 * virtual loss on the way.
 	 * 
-	 * @param node      The node from which we ran the simulation
-	 * @param simResult The players who won the simulation
+	 * @param node       The node from which we ran the simulation
+	 * @param nodeResult The players who have won in the state of the node
+	 * @param simResult  The players who won the simulation
 	 */
-	private void update(final MCNode node, final List<Integer> simResult) {
-		// if node is a finished game state such that its parent is not in the winning
-		// result, mark that parent as having an immediate loss so that it is never
-		// visited again
-		final List<Integer> nodeResult = node.getGameState().getWinningPlayers();
-		if (!nodeResult.isEmpty() && !nodeResult.contains(node.getParent().getGameState().getLastPlayer())) {
-			node.getParent().markImmediateLoss();
-		}
+	private void update(final MCNode node, final List<Integer> nodeResult, final List<Integer> simResult) {
+		this.checkImmediateLoss(node, nodeResult);
 
 		MCNode curr = node;
 
 		while (curr != null) {
 			curr.addResult(simResult);
+			curr.removeVirtualLoss();
 			curr = curr.getParent();
 		}
 	}
 
+	/**
+	 * This method performs backpropogation of a batch of simulations, like
+	 * {@link #update(MCNode, List, List)}.
+	 * 
+	 * @param node       The node from which we ran the simulations
+	 * @param nodeResult The players who have won in the state of the node
+	 * @param simResults The combined results of the simulations
+	 */
+	private void update(final MCNode node, final List<Integer> nodeResult, final SimulationResults simResults) {
+		this.checkImmediateLoss(node, nodeResult);
+
+		MCNode curr = node;
+
+		while (curr != null) {
+			curr.addResults(simResults);
+			curr.removeVirtualLoss();
+			curr = curr.getParent();
+		}
+	}
+
+	/**
+	 * If the given node is a finished game state such that its parent is not in
+	 * the winning result, this method marks that parent as having an immediate
+	 * loss so that it is never visited again.
+	 * 
+	 * @param node       The node from which we ran the simulations
+	 * @param nodeResult The players who have won in the state of the node
+	 */
+	private void checkImmediateLoss(final MCNode node, final List<Integer> nodeResult) {
+		if (!nodeResult.isEmpty() && node.getParent() != null
+				&& !nodeResult.contains(node.getParent().getLastPlayer())) {
+			node.getParent().markImmediateLoss();
+		}
+	}
+
 	/**
 	 * This method is called once MCTS is complete; it picks the move that got the
 	 * most simulations.
 	 * 
-	 * @return The game state after the suggested move is made
+	 * @return The child of the root that represents the suggested move
 	 */
-	private GameState suggestMove() {
+	private MCNode suggestMove() {
 		MCNode bestChild = null;
 
 		for (final MCNode child : this.root.getChildren()) {
@@ -178,8 +514,8 @@ public class MCTree {
 			}
 		}
 
-		System.out.println("Expected value = " + (bestChild.getNumWins() / bestChild.getNumIterations()) * 10 + "%");
+		this.listener.onMoveSuggested((bestChild.getNumWins() / bestChild.getNumIterations()) * 10);
 
-		return bestChild.getGameState();
+		return bestChild;
 	}
 }
@@ -0,0 +1,156 @@
+package mcts.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mcts.api.MoveGameState;
+import mcts.api.SearchBudget;
+import mcts.api.SearchListener;
+
+/**
+ * This class performs root-parallel tree search. Several independent MCTrees,
+ * each with its own copy of the game state and its own random number
+ * generator, are searched at the same time. Once they are done, the statistics
+ * of their root children are merged to pick the suggested move.
+ *
+ * @author Aaron Tetens
+ */
+public class RootParallelSearch {
+
+	private final MoveGameState initialState;
+	private final SearchBudget budget;
+	private final int numThreads;
+	private final SearchListener listener;
+
+	// the generator that the generator of each tree is split from
+	private final SplittableRandom random;
+
+	/**
+	 * @param budget   How much the search may do before it suggests a move (the
+	 *                 iterations and nodes are shared out evenly between the trees)
+	 * @param listener The listener to tell about the search (the trees of the
+	 *                 threads report nothing on their own)
+	 * @param seed     The seed of every random choice the search makes (each tree
+	 *                 gets a distinct generator, split from the seeded one in the
+	 *                 same order every time, so the same seed gives every tree
+	 *                 the same generator it had before)
+	 */
+	public RootParallelSearch(final MoveGameState initialState, final SearchBudget budget, final int numThreads,
+			final SearchListener listener, final long seed) {
+		this(initialState, budget, numThreads, listener, new SplittableRandom(seed));
+	}
+
+	private RootParallelSearch(final MoveGameState initialState, final SearchBudget budget, final int numThreads,
+			final SearchListener listener, final SplittableRandom random) {
+		this.initialState = initialState;
+		this.budget = budget;
+		this.numThreads = numThreads;
+		this.listener = listener;
+		this.random = random;
+	}
+
+	/**
+	 * @return The budget of each tree, with an even share of the iterations and
+	 *         nodes (rounded up, so that every tree gets at least one of each)
+	 */
+	private SearchBudget getTreeBudget() {
+		SearchBudget treeBudget = this.budget;
+
+		if (this.budget.getMaxIterations() != SearchBudget.UNLIMITED) {
+			treeBudget = treeBudget.withMaxIterations(getShare(this.budget.getMaxIterations(), this.numThreads));
+		}
+
+		if (this.budget.getMaxNodes() != SearchBudget.UNLIMITED) {
+			treeBudget = treeBudget.withMaxNodes(getShare(this.budget.getMaxNodes(), this.numThreads));
+		}
+
+		return treeBudget;
+	}
+
+	private static long getShare(final long total, final int numShares) {
+		return (total + numShares - 1) / numShares;
+	}
+
+	/**
+	 * Search one tree per thread from the initial state. Every tree starts with the
+	 * same set of root children (in the same order) so that their results can be
+	 * combined afterwards.
+	 *
+	 * @return The GameState that is the result of performing the move suggested by
+	 *         the search
+	 */
+	public MoveGameState search() throws IllegalStateException {
+		final int[] moves = new int[this.initialState.getMaxNumMoves()];
+		final int[] rootMoves = Arrays.copyOf(moves, this.initialState.getLegalMoves(moves));
+		final SearchBudget treeBudget = this.getTreeBudget();
+		final long startTime = System.nanoTime();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(this.numThreads);
+		final List<Future<MCTree>> futures = new ArrayList<>();
+
+		for (int i = 0; i < this.numThreads; i++) {
+			final SplittableRandom treeRandom = this.random.split();
+
+			futures.add(executor.submit(() -> {
+				// the tree only reads the initial state (to copy it for its own thread)
+				final MCTree tree = new MCTree(this.initialState, rootMoves, treeBudget, treeRandom);
+				tree.iterate();
+
+				return tree;
+			}));
+		}
+
+		// merge the statistics of the root children of every tree
+		final double[] numWins = new double[rootMoves.length];
+		final int[] numIterations = new int[rootMoves.length];
+		long numPlayouts = 0;
+
+		try {
+			for (final Future<MCTree> future : futures) {
+				final MCTree tree = future.get();
+				final List<MCNode> rootChildren = tree.getRootChildren();
+				numPlayouts += tree.getNumPlayouts();
+
+				for (int i = 0; i < rootChildren.size(); i++) {
+					numWins[i] += rootChildren.get(i).getNumWins();
+					numIterations[i] += rootChildren.get(i).getNumIterations();
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the search threads!", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("A search thread failed!", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		int totalIterations = 0;
+		for (final int iterations : numIterations) {
+			totalIterations += iterations;
+		}
+
+		this.listener.onSearchFinished(totalIterations, numPlayouts, this.numThreads,
+				(System.nanoTime() - startTime) / 1e9);
+
+		// choose the move with the most simulations across all trees
+		int bestIndex = 0;
+		for (int i = 1; i < numIterations.length; i++) {
+			if (numIterations[i] > numIterations[bestIndex]) {
+				bestIndex = i;
+			}
+		}
+
+		this.listener.onMoveSuggested((numWins[bestIndex] / numIterations[bestIndex]) * 10);
+
+		final MoveGameState result = this.initialState.copy();
+		result.apply(rootMoves[bestIndex]);
+		return result;
+	}
+}
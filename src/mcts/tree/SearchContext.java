@@ -0,0 +1,107 @@
+package mcts.tree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import mcts.api.MoveGameState;
+import mcts.api.SearchBudget;
+
+/**
+ * This class holds everything a single search thread works with: its own copy
+ * of the game state, which is walked down the tree and back up again by
+ * applying and undoing moves, and the buffers used to do so.
+ *
+ * @author Aaron Tetens
+ */
+class SearchContext {
+
+	private final MoveGameState state;
+	private final int[] moveBuffer;
+	private final SplittableRandom random;
+
+	// the results of the batch of simulations this thread is running, reused from
+	// one batch to the next
+	private final SimulationResults results;
+
+	// the moves made during the current simulation, so that they can be undone
+	private int[] playoutMoves;
+
+	SearchContext(final MoveGameState state, final SplittableRandom random) {
+		this.state = state;
+		this.moveBuffer = new int[state.getMaxNumMoves()];
+		this.random = random;
+		this.results = new SimulationResults();
+		this.playoutMoves = new int[64];
+	}
+
+	/**
+	 * Plays random moves from the current state until the game is over, then undoes
+	 * all of them so that the state is left as it was.
+	 *
+	 * @param budget The budget of the search, which sets how long a simulation may
+	 *               run before being considered "dead" (the game is in a state
+	 *               where it can never be finished)
+	 * @return A list of integers representing the players who won the random
+	 *         playout
+	 */
+	List<Integer> simulate(final SearchBudget budget) {
+		final long startTime = System.nanoTime();
+		int numMoves = 0;
+
+		List<Integer> winningPlayers = this.state.getWinningPlayers();
+
+		// while no one has won, make a random move
+		while (winningPlayers.isEmpty()) {
+			if (numMoves == this.playoutMoves.length) {
+				this.playoutMoves = Arrays.copyOf(this.playoutMoves, numMoves * 2);
+			}
+
+			this.playoutMoves[numMoves++] = this.state.applyRandomMove(this.random);
+
+			// a timeout counts as a win for nobody (the clock is only read every so many
+			// moves)
+			if (numMoves % budget.getCheckInterval() == 0 && budget.isSimulationOutOfTime(startTime)) {
+				winningPlayers = Collections.emptyList();
+				break;
+			}
+
+			winningPlayers = this.state.getWinningPlayers();
+		}
+
+		while (numMoves > 0) {
+			this.state.undo(this.playoutMoves[--numMoves]);
+		}
+
+		return winningPlayers;
+	}
+
+	/**
+	 * @return The game state of this thread
+	 */
+	MoveGameState getState() {
+		return this.state;
+	}
+
+	/**
+	 * @return A buffer large enough to hold the moves of any state
+	 */
+	int[] getMoveBuffer() {
+		return this.moveBuffer;
+	}
+
+	/**
+	 * @return The random number generator of this thread
+	 */
+	SplittableRandom getRandom() {
+		return this.random;
+	}
+
+	/**
+	 * @return The results of the batch of simulations this thread is running
+	 */
+	SimulationResults getResults() {
+		return this.results;
+	}
+}
@@ -0,0 +1,129 @@
+package mcts.tree;
+
+import java.util.SplittableRandom;
+
+import mcts.api.MoveGameState;
+import mcts.api.SearchBudget;
+import mcts.api.SearchListener;
+
+/**
+ * This class keeps a search tree alive between the moves of a game. When asked
+ * to search again, it looks for the current game state below the move it
+ * suggested last time, and if it is found, that node becomes the new root so
+ * that the statistics gathered so far are not thrown away.
+ *
+ * The tree is only searched with a depth-first walk over the moves it already
+ * holds, so a state can only be found if every move leading to it was expanded.
+ * A game may refuse to expand the turns of players whose hidden information is
+ * unknown (a Ticket to Ride state does this for every player but the AI), in
+ * which case nothing is reused across an opponent's move - only across
+ * decisions the searching player makes one after another.
+ *
+ * @author Aaron Tetens
+ */
+public class SearchSession {
+
+	// how many moves after the last suggested move we look for the current state
+	private static final int MAX_REUSE_DEPTH = 8;
+
+	private final SearchBudget budget;
+	private final int numThreads;
+	private final SearchListener listener;
+
+	// the generator that the generator of each search is split from
+	private final SplittableRandom random;
+
+	// the node of the move suggested by the last search and the state it leads to,
+	// or null before the first
+	private MCNode lastMove;
+	private MoveGameState lastResult;
+
+	/**
+	 * @param budget   How much each search of the session may do before it
+	 *                 suggests a move
+	 * @param listener The listener to tell about every search of the session
+	 * @param seed     The seed of the generator that the generator of each search
+	 *                 is split from, in the order the searches are made
+	 */
+	public SearchSession(final SearchBudget budget, final int numThreads, final SearchListener listener,
+			final long seed) {
+		this.budget = budget;
+		this.numThreads = numThreads;
+		this.listener = listener;
+		this.random = new SplittableRandom(seed);
+		this.lastMove = null;
+		this.lastResult = null;
+	}
+
+	/**
+	 * Searches from the given state, reusing the part of the previous tree that
+	 * matches it if there is one.
+	 *
+	 * @param currentState The state from which to start the search
+	 * @return A copy of the GameState that is the result of performing the move
+	 *         suggested by the search (the caller may modify it freely)
+	 */
+	public MoveGameState search(final MoveGameState currentState) {
+		// the search never modifies the state it starts from, but the caller might
+		final MoveGameState rootState = currentState.copy();
+		MCTree tree = null;
+
+		if (this.lastMove != null) {
+			final MCNode match = this.findMatchingNode(this.lastMove, this.lastResult, rootState, 0);
+
+			// a subtree that is already over the node cap could never grow, so it is
+			// dropped to keep the memory of the session bounded
+			if (match != null && (this.budget.getMaxNodes() == SearchBudget.UNLIMITED
+					|| match.countNodes() <= this.budget.getMaxNodes())) {
+				this.listener.onSubtreeReused(match.getNumIterations());
+				match.detach();
+				tree = new MCTree(rootState, match, this.budget, 1, this.listener, this.random.split());
+			}
+		}
+
+		if (tree == null) {
+			tree = new MCTree(rootState, new MCNode(0, null), this.budget, 1, this.listener, this.random.split());
+		}
+
+		this.lastMove = tree.searchForMove(this.numThreads);
+		this.lastResult = tree.getResultOf(this.lastMove);
+
+		// only the subtree of the move we made can be reached from here on
+		this.lastMove.detach();
+
+		return this.lastResult.copy();
+	}
+
+	/**
+	 * Performs a depth-first search below the given node for a node whose state is
+	 * equal to the given one. Only nodes that have been simulated are looked at.
+	 *
+	 * @param node   The node to search below
+	 * @param state  The state of the node, which is walked down the tree and back
+	 * @param target The state to look for
+	 * @param depth  How far below the last suggested move the node is
+	 * @return The matching node, or null if there is none
+	 */
+	private MCNode findMatchingNode(final MCNode node, final MoveGameState state, final MoveGameState target,
+			final int depth) {
+		if (state.equals(target)) {
+			return node;
+		}
+
+		if (depth < MAX_REUSE_DEPTH) {
+			for (final MCNode child : node.getChildren()) {
+				if (child.getNumIterations() > 0) {
+					state.apply(child.getMove());
+					final MCNode match = this.findMatchingNode(child, state, target, depth + 1);
+					state.undo(child.getMove());
+
+					if (match != null) {
+						return match;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,84 @@
+package mcts.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class combines the results of one or more simulations that were run from
+ * the same node so that they can be backpropogated all at once. The wins are
+ * kept in an array indexed by player, which grows to fit the players it sees
+ * and is then reused from one batch to the next.
+ *
+ * @author Aaron Tetens
+ */
+class SimulationResults {
+
+	private double[] winsForPlayer;
+	private int numPlayouts;
+
+	SimulationResults() {
+		this.winsForPlayer = new double[0];
+		this.numPlayouts = 0;
+	}
+
+	/**
+	 * Forgets every result added so far, so that the next batch can be added.
+	 */
+	void clear() {
+		Arrays.fill(this.winsForPlayer, 0.0);
+		this.numPlayouts = 0;
+	}
+
+	/**
+	 * Adds the result of a single simulation. If there is a group of tying winners,
+	 * the value of the win is split evenly.
+	 *
+	 * @param result The players who won the simulation
+	 */
+	void add(final List<Integer> result) {
+		for (int i = 0; i < result.size(); i++) {
+			final int player = result.get(i);
+
+			if (player >= this.winsForPlayer.length) {
+				this.winsForPlayer = Arrays.copyOf(this.winsForPlayer, player + 1);
+			}
+
+			this.winsForPlayer[player] += 10.0 / result.size();
+		}
+
+		this.numPlayouts++;
+	}
+
+	/**
+	 * Adds all of the results of another batch.
+	 *
+	 * @param results The results to add
+	 */
+	void add(final SimulationResults results) {
+		if (results.winsForPlayer.length > this.winsForPlayer.length) {
+			this.winsForPlayer = Arrays.copyOf(this.winsForPlayer, results.winsForPlayer.length);
+		}
+
+		for (int i = 0; i < results.winsForPlayer.length; i++) {
+			this.winsForPlayer[i] += results.winsForPlayer[i];
+		}
+
+		this.numPlayouts += results.numPlayouts;
+	}
+
+	/**
+	 * @param player The player to look up
+	 * @return The total value of the wins the given player got over all of the
+	 *         simulations
+	 */
+	double getWinsForPlayer(final int player) {
+		return (player >= 0 && player < this.winsForPlayer.length) ? this.winsForPlayer[player] : 0.0;
+	}
+
+	/**
+	 * @return The number of simulations that were added
+	 */
+	int getNumPlayouts() {
+		return this.numPlayouts;
+	}
+}
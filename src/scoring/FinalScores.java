@@ -0,0 +1,42 @@
+package scoring;
+
+/**
+ * The outcome of the end of game scoring for every player, worked out without
+ * changing the players or the board.
+ */
+public class FinalScores {
+
+	private final int[] scores;
+	private final int[] numCompletedTickets;
+	private final int[] longestRouteLengths;
+
+	FinalScores(final int[] scores, final int[] numCompletedTickets, final int[] longestRouteLengths) {
+		this.scores = scores;
+		this.numCompletedTickets = numCompletedTickets;
+		this.longestRouteLengths = longestRouteLengths;
+	}
+
+	public int getNumPlayers() {
+		return this.scores.length;
+	}
+
+	/**
+	 * @return The final score of the given player, including the points scored
+	 *         during the game
+	 */
+	public int getScore(final int player) {
+		return this.scores[player];
+	}
+
+	public int getNumCompletedTickets(final int player) {
+		return this.numCompletedTickets[player];
+	}
+
+	/**
+	 * @return The length of the longest route of the given player, or 0 if the
+	 *         award is not in play
+	 */
+	public int getLongestRouteLength(final int player) {
+		return this.longestRouteLengths[player];
+	}
+}
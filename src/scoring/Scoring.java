@@ -1,83 +1,75 @@
 package scoring;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import data.DestinationTicket;
 import state.Board;
 import state.Player;
 
 public class Scoring {
 
-	public static void doEndGameScoring(final Player[] players, final Board board, final long longestRoutePoints,
+	/**
+	 * Works out the final scores without changing the players, so that it is safe
+	 * to do on a state that other threads are reading.
+	 */
+	public static FinalScores getFinalScores(final Player[] players, final Board board, final long longestRoutePoints,
 			final long globetrotterPoints) {
+		final int[] scores = new int[players.length];
+		final int[] numCompletedTickets = new int[players.length];
+		final int[] longestRouteLengths = new int[players.length];
 
 		// destination tickets
 		for (int i = 0; i < players.length; i++) {
-			final Player player = players[i];
+			scores[i] = players[i].getScore();
 
-			for (final DestinationTicket ticket : player.getKnownDestinationTickets()) {
+			for (final DestinationTicket ticket : players[i].getKnownDestinationTickets()) {
 				if (board.isCompleteTicket(ticket, i)) {
-					player.addScore(ticket.getPoints());
-					player.setNumCompletedTickets(player.getNumCompletedTickets() + 1);
+					scores[i] += ticket.getPoints();
+					numCompletedTickets[i]++;
 				} else {
-					player.addScore(-ticket.getPoints());
+					scores[i] -= ticket.getPoints();
 				}
 			}
 		}
 
 		// longest route
 		if (longestRoutePoints > 0) {
+			int bestLength = 0;
 			for (int i = 0; i < players.length; i++) {
-				final Player player = players[i];
-
-				player.setLongestRouteLength(board.getLongestRouteLengthForPlayer(i));
+				longestRouteLengths[i] = board.getLongestRouteLengthForPlayer(i);
+				bestLength = Math.max(bestLength, longestRouteLengths[i]);
 			}
-			
-			final List<Player> longestRouteWinners = new ArrayList<>();
 
-			for (final Player player : players) {
-				if (longestRouteWinners.isEmpty()) {
-					longestRouteWinners.add(player);
-				} else {
-					final Player bestPlayer = longestRouteWinners.get(0);
-
-					if (player.getLongestRouteLength() > bestPlayer.getLongestRouteLength()) {
-						longestRouteWinners.clear();
-						longestRouteWinners.add(player);
-					} else if (player.getLongestRouteLength() == bestPlayer.getLongestRouteLength()) {
-						longestRouteWinners.add(player);
-					}
+			for (int i = 0; i < players.length; i++) {
+				if (longestRouteLengths[i] == bestLength) {
+					scores[i] += longestRoutePoints;
 				}
 			}
-
-			for (final Player player : longestRouteWinners) {
-				player.addScore(longestRoutePoints);
-			}
 		}
 
 		// globetrotter
 		if (globetrotterPoints > 0) {
-			final List<Player> globetrotterWinners = new ArrayList<>();
-
-			for (final Player player : players) {
-				if (globetrotterWinners.isEmpty()) {
-					globetrotterWinners.add(player);
-				} else {
-					final Player bestPlayer = globetrotterWinners.get(0);
+			int bestNumCompleted = 0;
+			for (int i = 0; i < players.length; i++) {
+				bestNumCompleted = Math.max(bestNumCompleted, numCompletedTickets[i]);
+			}
 
-					if (player.getNumCompletedTickets() > bestPlayer.getNumCompletedTickets()) {
-						globetrotterWinners.clear();
-						globetrotterWinners.add(player);
-					} else if (player.getNumCompletedTickets() == bestPlayer.getNumCompletedTickets()) {
-						globetrotterWinners.add(player);
-					}
+			for (int i = 0; i < players.length; i++) {
+				if (numCompletedTickets[i] == bestNumCompleted) {
+					scores[i] += globetrotterPoints;
 				}
 			}
+		}
 
-			for (final Player player : globetrotterWinners) {
-				player.addScore(globetrotterPoints);
-			}
+		return new FinalScores(scores, numCompletedTickets, longestRouteLengths);
+	}
+
+	public static void doEndGameScoring(final Player[] players, final Board board, final long longestRoutePoints,
+			final long globetrotterPoints) {
+		final FinalScores finalScores = getFinalScores(players, board, longestRoutePoints, globetrotterPoints);
+
+		for (int i = 0; i < players.length; i++) {
+			players[i].addScore(finalScores.getScore(i) - players[i].getScore());
+			players[i].setNumCompletedTickets(finalScores.getNumCompletedTickets(i));
+			players[i].setLongestRouteLength(finalScores.getLongestRouteLength(i));
 		}
 	}
 }
@@ -10,9 +10,9 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import data.DestinationTicket;
 import driver.GameDriver;
 import state.Board;
+import state.CardColor;
 import state.ColorDeck;
 import state.DestinationTicketDeck;
 
@@ -50,7 +50,7 @@ public class GameConfig {
 		final ColorDeck colorDeck = new ColorDeck();
 
 		for (final Map.Entry<String, Long> entry : colorsMap.entrySet()) {
-			colorDeck.initColor(entry.getKey(), entry.getValue());
+			colorDeck.initColor(CardColor.valueOf(entry.getKey()), entry.getValue());
 		}
 
 		// destination ticket deck
@@ -64,8 +64,7 @@ public class GameConfig {
 			final String end = (String) destinationTicketJSONObj.get("END");
 			final long points = (Long) destinationTicketJSONObj.get("POINTS");
 
-			final DestinationTicket destinationTicket = new DestinationTicket(start, end, points);
-			destinationTicketDeck.initDestinationTicket(destinationTicket);
+			destinationTicketDeck.initDestinationTicket(start, end, points);
 		}
 
 		// board
@@ -0,0 +1,68 @@
+package state;
+
+/**
+ * Helpers for sets of small ints stored as bits in a long[]. Several sets may
+ * share one array, each starting at its own word offset, so that all of them
+ * can be copied with a single clone.
+ */
+final class Bits {
+
+	private Bits() {
+	}
+
+	/**
+	 * @param numBits The number of bits in a set
+	 * @return The number of longs needed to hold the set
+	 */
+	static int getNumWords(final int numBits) {
+		return (numBits + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	static boolean get(final long[] bits, final int offset, final int bit) {
+		return (bits[offset + (bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	static void set(final long[] bits, final int offset, final int bit) {
+		bits[offset + (bit >>> 6)] |= 1L << bit;
+	}
+
+	static void clear(final long[] bits, final int offset, final int bit) {
+		bits[offset + (bit >>> 6)] &= ~(1L << bit);
+	}
+
+	/**
+	 * @return The number of bits set in the set of the given number of words
+	 */
+	static int count(final long[] bits, final int offset, final int numWords) {
+		int count = 0;
+		for (int i = 0; i < numWords; i++) {
+			count += Long.bitCount(bits[offset + i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return The first bit from the given one on that is set, or -1 if there is
+	 *         none
+	 */
+	static int next(final long[] bits, final int offset, final int numWords, final int from) {
+		int word = from >>> 6;
+		if (word >= numWords) {
+			return -1;
+		}
+
+		long remaining = bits[offset + word] & (-1L << from);
+
+		while (remaining == 0) {
+			word++;
+			if (word >= numWords) {
+				return -1;
+			}
+
+			remaining = bits[offset + word];
+		}
+
+		return (word << 6) + Long.numberOfTrailingZeros(remaining);
+	}
+}
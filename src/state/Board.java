@@ -1,303 +1,388 @@
 package state;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Objects;
 import java.util.Set;
 
 import data.DestinationTicket;
 
 public class Board {
 
-	private final List<Connection> allConnections;
+	// the cities and connections, shared by every copy of this board
+	private final BoardTopology topology;
+	private final int numPlayers;
 
-	// used for path calculation (e.g. completed tickets, longest route)
-	private final Map<String, Set<Connection>> connectionsFromCity;
-
-	// used for connections that are technically open, but not claimable by a player
+	// sets of connections (by index), all kept in one array so that copying a board
+	// is a single clone - the open connections come first, then the connections
+	// owned by each player, then the open connections each player may not claim
 	// (e.g. specific double-route rules)
-	private final Map<Integer, Set<Connection>> forbiddenConnectionsForPlayer;
+	private int numWords;
+	private long[] bits;
+
+	// the distances in trains for each player, made when they are first needed
+	// and kept current as ownership changes - a copy starts without them (the
+	// distances in connections are only asked for once per ticket while guessing
+	// tickets, which a point-to-point search does for less than keeping them
+	// current)
+	// the queries only ever fill in caches like these, in a way that is safe
+	// while other threads read the same board, so a board that is not being changed
+	// can be shared
+	private PathDistances trainDistances;
+
+	// the groups of cities each player has joined, for checking tickets
+	private OwnedComponents components;
+
+	// the longest route of each player, or -1 if it has to be worked out again
+	// (two threads may both work it out, but they will store the same value)
+	private int[] longestRouteLengths;
 
 	public Board(final int numPlayers) {
-		this.allConnections = new ArrayList<>();
-		this.connectionsFromCity = new HashMap<>();
-
-		this.forbiddenConnectionsForPlayer = new HashMap<>();
-		for (int i = 0; i < numPlayers; i++) {
-			this.forbiddenConnectionsForPlayer.put(i, new HashSet<>());
-		}
+		this.topology = new BoardTopology();
+		this.numPlayers = numPlayers;
+		this.numWords = 0;
+		this.bits = new long[0];
+		this.trainDistances = null;
+		this.components = new OwnedComponents(numPlayers, 0);
+		this.longestRouteLengths = new int[numPlayers];
+		Arrays.fill(this.longestRouteLengths, -1);
 	}
 
 	public Board(final Board board) {
-		this.allConnections = new ArrayList<>();
-		this.connectionsFromCity = new HashMap<>();
-
-		for (final Connection connection : board.allConnections) {
-			final Connection newConnection = new Connection(connection);
-
-			this.allConnections.add(newConnection);
+		// once a board has been copied, its map may no longer change
+		board.topology.freeze();
+
+		this.topology = board.topology;
+		this.numPlayers = board.numPlayers;
+		this.numWords = board.numWords;
+		this.bits = board.bits.clone();
+		this.trainDistances = null;
+		this.components = new OwnedComponents(board.components);
+		this.longestRouteLengths = board.longestRouteLengths.clone();
+	}
 
-			this.connectionsFromCity.putIfAbsent(newConnection.start, new HashSet<>());
-			this.connectionsFromCity.putIfAbsent(newConnection.end, new HashSet<>());
-			this.connectionsFromCity.get(newConnection.start).add(newConnection);
-			this.connectionsFromCity.get(newConnection.end).add(newConnection);
-		}
+	private int getOpenOffset() {
+		return 0;
+	}
 
-		this.forbiddenConnectionsForPlayer = new HashMap<>();
-		for (final Integer owner : board.forbiddenConnectionsForPlayer.keySet()) {
-			final Set<Connection> setCopy = new HashSet<>();
-			for (final Connection connection : board.forbiddenConnectionsForPlayer.get(owner)) {
-				setCopy.add(this.getMatchingConnection(connection));
-			}
+	private int getOwnedOffset(final int player) {
+		return (1 + player) * this.numWords;
+	}
 
-			this.forbiddenConnectionsForPlayer.put(owner, setCopy);
-		}
+	private int getForbiddenOffset(final int player) {
+		return (1 + this.numPlayers + player) * this.numWords;
 	}
 
 	public Set<Connection> getPossibleConnectionsForOwner(final int owner) {
 		final Set<Connection> connections = new HashSet<>();
 
-		for (final Connection connection : this.allConnections) {
-			if (connection.owner == -1 && !this.forbiddenConnectionsForPlayer.get(owner).contains(connection)) {
-				connections.add(connection);
+		for (int word = 0; word < this.numWords; word++) {
+			long claimable = this.getClaimableWord(word, owner);
+
+			while (claimable != 0) {
+				connections.add(this.getConnection(word * Long.SIZE + Long.numberOfTrailingZeros(claimable)));
+				claimable &= claimable - 1;
 			}
 		}
 
 		return connections;
 	}
 
-	private boolean isReasonableConnectionForOwner(final Connection connection, final Player player, final int owner,
-			final int aiPlayer) {
-		// if you have 6 or less cars and finished all tickets, anything goes
-		// humans may end as early as 12 cars left
-		if ((player.getNumCarsRemaining() < 7 || (owner != aiPlayer && player.getNumCarsRemaining() < 13))
-				&& player.mayDrawTickets(this, owner)) {
-			return true;
-		}
-
-		// a useful connection is one that lowers the minimum number of connections
-		// required to completed all known tickets
-		int total = 0;
-		for (final DestinationTicket ticket : player.getKnownDestinationTickets()) {
-			total += this.getMinTrainsBetween(ticket.getStart(), ticket.getEnd(), owner);
-		}
+	/**
+	 * @return The given word of the set of open connections that are not forbidden
+	 *         for the given player
+	 */
+	private long getClaimableWord(final int word, final int player) {
+		return this.bits[this.getOpenOffset() + word] & ~this.bits[this.getForbiddenOffset(player) + word];
+	}
 
-		connection.owner = owner;
-		int newTotal = 0;
-		for (final DestinationTicket ticket : player.getKnownDestinationTickets()) {
-			newTotal += this.getMinTrainsBetween(ticket.getStart(), ticket.getEnd(), owner);
-		}
-		connection.owner = -1;
+	private void setOwner(final int connection, final int owner) {
+		Bits.clear(this.bits, this.getOpenOffset(), connection);
+		Bits.set(this.bits, this.getOwnedOffset(owner), connection);
+	}
 
-		return newTotal + connection.length == total;
+	private void clearOwner(final int connection, final int owner) {
+		Bits.clear(this.bits, this.getOwnedOffset(owner), connection);
+		Bits.set(this.bits, this.getOpenOffset(), connection);
 	}
 
-	public int getMinTrainsBetween(final String start, final String end, final int owner) {
-		// implementation of Dijkstra's algorithm where an open connection has weight of
-		// its length and an owned connection has weight 0
-
-		final Set<String> allCities = this.connectionsFromCity.keySet();
-
-		// assign initial distance values
-		final Map<String, Integer> dist = new HashMap<>();
-		for (final String city : allCities) {
-			if (city.equals(start)) {
-				dist.put(city, 0);
-			} else {
-				dist.put(city, 1000);
-			}
-		}
+	/**
+	 * Adds the open connections the given player may claim that are reasonable
+	 * for them to the given set.
+	 */
+	private void addReasonableConnectionsForOwner(final Set<Connection> reasonableConnections, final Player player,
+			final int owner, final int aiPlayer) {
+		// if you have 6 or less cars and finished all tickets, anything goes
+		// humans may end as early as 12 cars left
+		final boolean isAnythingReasonable = (player.getNumCarsRemaining() < 7
+				|| (owner != aiPlayer && player.getNumCarsRemaining() < 13)) && player.mayDrawTickets(this, owner);
 
-		// initialize queue
-		final PriorityQueue<String> queue = new PriorityQueue<>(new Comparator<>() {
-			@Override
-			public int compare(final String city1, String city2) {
-				return dist.get(city1).compareTo(dist.get(city2));
-			}
-		});
+		// the distances from both ends of each known ticket, shared by every connection
+		final List<DestinationTicket> tickets = player.getKnownDestinationTickets();
+		final int[][] fromStarts = new int[tickets.size()][];
+		final int[][] fromEnds = new int[tickets.size()][];
+		final int[] ticketDistances = new int[tickets.size()];
 
-		for (final String city : allCities) {
-			queue.add(city);
-		}
+		if (!isAnythingReasonable) {
+			final PathDistances distances = this.getTrainDistances();
 
-		while (!queue.isEmpty()) {
-			final String current = queue.poll();
+			for (int i = 0; i < tickets.size(); i++) {
+				final int end = this.getCityId(tickets.get(i).getEnd());
 
-			for (final Connection connection : this.connectionsFromCity.get(current)) {
-				final String neighbor = connection.start.equals(current) ? connection.end : connection.start;
-				if (queue.contains(neighbor)) {
-					int alt = dist.get(current);
+				fromStarts[i] = distances.getFrom(this, owner, this.getCityId(tickets.get(i).getStart()));
+				fromEnds[i] = distances.getFrom(this, owner, end);
+				ticketDistances[i] = fromStarts[i][end];
+			}
+		}
 
-					if (this.forbiddenConnectionsForPlayer.get(owner).contains(connection)) {
-						alt += 1000;
-					} else if (connection.owner == -1) {
-						alt += connection.length;
-					} else if (connection.owner != owner) {
-						alt += 1000;
-					}
+		for (int word = 0; word < this.numWords; word++) {
+			long claimable = this.getClaimableWord(word, owner);
 
-					if (alt < dist.get(neighbor)) {
-						dist.put(neighbor, alt);
+			while (claimable != 0) {
+				final Connection possible = this.getConnection(word * Long.SIZE + Long.numberOfTrailingZeros(claimable));
+				claimable &= claimable - 1;
 
-						// re-prioritize
-						queue.remove(neighbor);
-						queue.add(neighbor);
-					}
+				if (isAnythingReasonable || this.isReasonableConnection(possible, fromStarts, fromEnds, ticketDistances)) {
+					reasonableConnections.add(possible);
 				}
 			}
+		}
+	}
 
-			if (current.equals(end)) {
-				return dist.get(end);
-			}
+	private boolean isReasonableConnection(final Connection connection, final int[][] fromStarts,
+			final int[][] fromEnds, final int[] ticketDistances) {
+		// a useful connection is one that lowers the minimum number of connections
+		// required to completed all known tickets - owning it would make it free, so
+		// the new shortest path between the ends of a ticket either is the old one or
+		// goes from one end to the connection and from the connection to the other end
+		int total = 0;
+		int newTotal = 0;
+
+		for (int i = 0; i < fromStarts.length; i++) {
+			final int[] fromStart = fromStarts[i];
+			final int[] fromEnd = fromEnds[i];
 
+			total += ticketDistances[i];
+			newTotal += Math.min(ticketDistances[i],
+					Math.min(fromStart[connection.startId] + fromEnd[connection.endId],
+							fromStart[connection.endId] + fromEnd[connection.startId]));
 		}
 
-		return dist.get(end);
+		return newTotal + connection.length == total;
 	}
 
-	public int getMinConnectionsBetween(final String start, final String end, final int owner) {
-		// implementation of Dijkstra's algorithm where an open connection has weight of
-		// 1 and an owned connection has weight 0
-
-		final Set<String> allCities = this.connectionsFromCity.keySet();
-
-		// assign initial distance values
-		final Map<String, Integer> dist = new HashMap<>();
-		for (final String city : allCities) {
-			if (city.equals(start)) {
-				dist.put(city, 0);
-			} else {
-				dist.put(city, 1000);
-			}
-		}
+	public int getMinTrainsBetween(final String start, final String end, final int owner) {
+		return this.getMinTrainsBetween(this.getCityId(start), this.getCityId(end), owner);
+	}
 
-		// initialize queue
-		final PriorityQueue<String> queue = new PriorityQueue<>(new Comparator<>() {
-			@Override
-			public int compare(final String city1, String city2) {
-				return dist.get(city1).compareTo(dist.get(city2));
-			}
-		});
+	public int getMinTrainsBetween(final int start, final int end, final int owner) {
+		// an open connection has weight of its length and an owned connection has
+		// weight 0
+		return this.getTrainDistances().get(this, owner, start, end);
+	}
 
-		for (final String city : allCities) {
-			queue.add(city);
-		}
+	public int getMinConnectionsBetween(final String start, final String end, final int owner) {
+		return this.getMinConnectionsBetween(this.getCityId(start), this.getCityId(end), owner);
+	}
 
-		while (!queue.isEmpty()) {
-			final String current = queue.poll();
+	public int getMinConnectionsBetween(final int start, final int end, final int owner) {
+		// an open connection has weight of 1 and an owned connection has weight 0
+		return ShortestPaths.getDistance(this, start, end, owner, false);
+	}
 
-			for (final Connection connection : this.connectionsFromCity.get(current)) {
-				final String neighbor = connection.start.equals(current) ? connection.end : connection.start;
-				if (queue.contains(neighbor)) {
-					int alt = dist.get(current);
+	private PathDistances getTrainDistances() {
+		PathDistances distances = this.trainDistances;
 
-					if (this.forbiddenConnectionsForPlayer.get(owner).contains(connection)) {
-						alt += 1000;
-					} else if (connection.owner == -1) {
-						alt += 1;
-					} else if (connection.owner != owner) {
-						alt += 1000;
-					}
+		if (distances == null) {
+			this.topology.freeze();
+			distances = new PathDistances(this.numPlayers, this.topology.getNumCities(), true);
+			this.trainDistances = distances;
+		}
 
-					if (alt < dist.get(neighbor)) {
-						dist.put(neighbor, alt);
+		return distances;
+	}
 
-						// re-prioritize
-						queue.remove(neighbor);
-						queue.add(neighbor);
-					}
-				}
-			}
+	/**
+	 * Must be called just before the owner of the given connection changes.
+	 */
+	private void saveCosts(final int connection) {
+		if (this.trainDistances != null) {
+			this.trainDistances.saveCosts(this, connection);
+		}
+	}
 
-			if (current.equals(end)) {
-				return dist.get(end);
-			}
+	/**
+	 * Must be called just after the owner of the given connection changes.
+	 */
+	private void updateDistances(final int connection) {
+		if (this.trainDistances != null) {
+			this.trainDistances.update(this, connection);
+		}
+	}
 
+	/**
+	 * @return The cost for the given owner of using the given connection in a path
+	 *         (1000 if the owner can never use it)
+	 */
+	int getCost(final int connection, final int owner, final boolean countTrains) {
+		if (Bits.get(this.bits, this.getForbiddenOffset(owner), connection)) {
+			return 1000;
+		} else if (Bits.get(this.bits, this.getOpenOffset(), connection)) {
+			return countTrains ? (int) this.topology.getConnection(connection).length : 1;
+		} else if (!Bits.get(this.bits, this.getOwnedOffset(owner), connection)) {
+			return 1000;
 		}
 
-		return dist.get(end);
+		return 0;
 	}
 
 	public Set<Connection> getReasonableConnectionsForOwner(final Player player, final int owner, final Player aiPlayer,
 			final int aiPlayerIndex) {
 		final Set<Connection> reasonableConnections = new HashSet<>();
-
-		for (final Connection possible : this.getPossibleConnectionsForOwner(owner)) {
-			if (this.isReasonableConnectionForOwner(possible, player, owner, aiPlayerIndex)) {
-				reasonableConnections.add(possible);
-			}
-		}
+		this.addReasonableConnectionsForOwner(reasonableConnections, player, owner, aiPlayerIndex);
 
 		// if the player is human, they may try to block our connections
 		if (owner != aiPlayerIndex) {
-			reasonableConnections
-					.addAll(this.getReasonableConnectionsForOwner(aiPlayer, aiPlayerIndex, aiPlayer, aiPlayerIndex));
+			this.addReasonableConnectionsForOwner(reasonableConnections, aiPlayer, aiPlayerIndex, aiPlayerIndex);
 		}
 
 		return reasonableConnections;
 	}
 
-	public Set<Connection> getForbiddenConnectionsForPlayer(final int player) {
-		return this.forbiddenConnectionsForPlayer.get(player);
+	boolean isOwnedBy(final int connection, final int owner) {
+		return Bits.get(this.bits, this.getOwnedOffset(owner), connection);
+	}
+
+	public boolean isForbiddenForPlayer(final Connection connection, final int player) {
+		return Bits.get(this.bits, this.getForbiddenOffset(player), connection.index);
+	}
+
+	/**
+	 * @return The player who owns the given connection, or -1 if it is open
+	 */
+	public int getOwner(final Connection connection) {
+		for (int player = 0; player < this.numPlayers; player++) {
+			if (Bits.get(this.bits, this.getOwnedOffset(player), connection.index)) {
+				return player;
+			}
+		}
+
+		return -1;
+	}
+
+	BoardTopology getTopology() {
+		return this.topology;
+	}
+
+	public Connection getConnection(final int index) {
+		return this.topology.getConnection(index);
+	}
+
+	public int getNumConnections() {
+		return this.topology.getNumConnections();
 	}
 
 	public void giveOwnershipToPlayer(final Connection connection, final int owner, final int numPlayers) {
-		connection.owner = owner;
+		this.topology.freeze();
+		this.saveCosts(connection.index);
+
+		this.setOwner(connection.index, owner);
+		this.components.add(connection, owner);
+		this.longestRouteLengths[owner] = -1;
 
 		// forbid player from taking any other open route between the same two cities
 		// if less than 4 players, forbid EVERY player from taking any other open route
 		// between the same two cities
-		for (final Connection otherConnection : this.allConnections) {
-			if (otherConnection.owner == -1 && otherConnection.start.equals(connection.start)
-					&& otherConnection.end.equals(connection.end) && otherConnection.id != connection.id) {
-
+		for (final int otherConnection : this.topology.getTwins(connection.index)) {
+			if (Bits.get(this.bits, this.getOpenOffset(), otherConnection)) {
 				if (numPlayers > 3) {
-					this.forbiddenConnectionsForPlayer.get(owner).add(otherConnection);
+					Bits.set(this.bits, this.getForbiddenOffset(owner), otherConnection);
 				} else {
 					for (int i = 0; i < numPlayers; i++) {
-						this.forbiddenConnectionsForPlayer.get(i).add(otherConnection);
+						Bits.set(this.bits, this.getForbiddenOffset(i), otherConnection);
 					}
 				}
 			}
 		}
+
+		this.updateDistances(connection.index);
 	}
 
-	private boolean alreadyHasConnectionBetweenCities(final String start, final String end) {
-		for (final Connection connection : this.allConnections) {
-			if (connection.start.equals(start) && connection.end.equals(end)) {
-				return true;
+	public void takeOwnershipFromPlayer(final Connection connection, final int owner, final int numPlayers) {
+		this.topology.freeze();
+		this.saveCosts(connection.index);
+
+		// undoes giveOwnershipToPlayer - the other open routes between the same two
+		// cities can only have been forbidden by this connection being claimed
+		for (final int otherConnection : this.topology.getTwins(connection.index)) {
+			if (Bits.get(this.bits, this.getOpenOffset(), otherConnection)) {
+				if (numPlayers > 3) {
+					Bits.clear(this.bits, this.getForbiddenOffset(owner), otherConnection);
+				} else {
+					for (int i = 0; i < numPlayers; i++) {
+						Bits.clear(this.bits, this.getForbiddenOffset(i), otherConnection);
+					}
+				}
 			}
 		}
 
-		return false;
+		this.clearOwner(connection.index, owner);
+		this.components.remove(this, connection, owner);
+		this.longestRouteLengths[owner] = -1;
+
+		this.updateDistances(connection.index);
 	}
 
 	public void addConnection(final String start, final String end, final long length, final String color) {
-		Connection connection = null;
-		if (this.alreadyHasConnectionBetweenCities(start, end)) {
-			connection = new Connection(start, end, length, color, 2, -1);
-		} else {
-			connection = new Connection(start, end, length, color, 1, -1);
+		this.topology.addConnection(start, end, length, color);
+
+		// connections can only be added while the map is loaded, when nothing is owned
+		// or forbidden yet, so the sets can simply be laid out again with every
+		// connection open
+		final int numConnections = this.topology.getNumConnections();
+		this.numWords = Bits.getNumWords(numConnections);
+		this.bits = new long[(1 + 2 * this.numPlayers) * this.numWords];
+
+		for (int connection = 0; connection < numConnections; connection++) {
+			Bits.set(this.bits, this.getOpenOffset(), connection);
 		}
 
-		this.allConnections.add(connection);
+		this.trainDistances = null;
+		this.components = new OwnedComponents(this.numPlayers, this.topology.getNumCities());
+		Arrays.fill(this.longestRouteLengths, -1);
+	}
+
+	/**
+	 * @param city The name of a city
+	 * @return The id of the city, as used by the int-based queries
+	 */
+	public int getCityId(final String city) throws IllegalArgumentException {
+		return this.topology.getCityId(city);
+	}
+
+	/**
+	 * @param id The id of a city
+	 * @return The name of the city
+	 */
+	public String getCityName(final int id) {
+		return this.topology.getCityName(id);
+	}
 
-		this.connectionsFromCity.putIfAbsent(start, new HashSet<>());
-		this.connectionsFromCity.putIfAbsent(end, new HashSet<>());
-		this.connectionsFromCity.get(start).add(connection);
-		this.connectionsFromCity.get(end).add(connection);
+	public int getNumCities() {
+		return this.topology.getNumCities();
 	}
 
 	public List<Connection> getConnectionsForPlayer(final int owner) {
 		final List<Connection> connections = new ArrayList<>();
 
-		for (final Connection connection : this.allConnections) {
-			if (connection.owner == owner) {
-				connections.add(connection);
+		for (int word = 0; word < this.numWords; word++) {
+			long owned = this.bits[this.getOwnedOffset(owner) + word];
+
+			while (owned != 0) {
+				connections.add(this.getConnection(word * Long.SIZE + Long.numberOfTrailingZeros(owned)));
+				owned &= owned - 1;
 			}
 		}
 
@@ -305,8 +390,17 @@ public class Board {
 	}
 
 	public boolean playerOwnsCity(final String city, final int owner) {
-		for (final Connection connection : this.connectionsFromCity.get(city)) {
-			if (connection.owner == owner) {
+		return this.playerOwnsCity(this.getCityId(city), owner);
+	}
+
+	public boolean playerOwnsCity(final int city, final int owner) {
+		this.topology.freeze();
+
+		final int[] adjacencyOffsets = this.topology.getAdjacencyOffsets();
+		final int[] adjacentConnections = this.topology.getAdjacentConnections();
+
+		for (int j = adjacencyOffsets[city]; j < adjacencyOffsets[city + 1]; j++) {
+			if (Bits.get(this.bits, this.getOwnedOffset(owner), adjacentConnections[j])) {
 				return true;
 			}
 		}
@@ -315,77 +409,68 @@ public class Board {
 	}
 
 	public boolean isCompleteTicket(final DestinationTicket ticket, final int owner) {
-		final Set<String> visited = new HashSet<>();
-		final List<String> queue = new ArrayList<>();
-
-		queue.add(ticket.getStart());
-
-		while (!queue.isEmpty()) {
-			final String city = queue.remove(0);
-
-			if (city.equals(ticket.getEnd())) {
-				return true;
-			}
-
-			visited.add(city);
+		return this.isCompleteTicket(this.getCityId(ticket.getStart()), this.getCityId(ticket.getEnd()), owner);
+	}
 
-			for (final Connection connection : this.connectionsFromCity.get(city)) {
-				if (connection.owner == owner) {
-					final String otherCity = connection.start.equals(city) ? connection.end : connection.start;
+	public boolean isCompleteTicket(final int start, final int end, final int owner) {
+		return this.components.isConnected(owner, start, end);
+	}
 
-					if (!visited.contains(otherCity)) {
-						queue.add(otherCity);
-					}
-				}
-			}
+	public int getLongestRouteLengthForPlayer(final int owner) {
+		if (this.longestRouteLengths[owner] == -1) {
+			this.longestRouteLengths[owner] = LongestRoutes.getLongestRouteLength(this, this.components, owner);
 		}
 
-		return false;
+		return this.longestRouteLengths[owner];
 	}
 
-	public Connection getMatchingConnection(final Connection connection) {
-		for (final Connection otherConnection : this.allConnections) {
-			if (otherConnection.start.equals(connection.start) && otherConnection.end.equals(connection.end)
-					&& otherConnection.length == connection.length && otherConnection.color.equals(connection.color)
-					&& otherConnection.id == connection.id && otherConnection.owner == connection.owner) {
-				return otherConnection;
-			}
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof Board)) {
+			return false;
 		}
 
-		return null;
+		final Board other = (Board) obj;
+		return this.topology == other.topology && Arrays.equals(this.bits, other.bits);
 	}
 
-	public int getLongestRouteLengthForPlayer(final int owner) {
-		// TODO
-		return 0;
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.bits);
 	}
 
-	public class Connection {
+	/**
+	 * A route between two cities. Connections are part of the map and never
+	 * change; who owns one is kept by the board.
+	 */
+	public static class Connection {
 		private final String start;
 		private final String end;
+		private final int startId;
+		private final int endId;
 		private final long length;
 		private final String color;
+		private final CardColor cardColor; // null for a gray connection, which may be paid with any color
 		private final int id; // used to tell apart double routes with the same length and color
+		private final int index; // position in the list of all connections
+		private final int hash;
 
-		private int owner;
-
-		public Connection(final String start, final String end, final long length, final String color, final int id,
-				final int owner) {
+		Connection(final String start, final String end, final int startId, final int endId, final long length,
+				final String color, final int id, final int index) {
 			this.start = start;
 			this.end = end;
+			this.startId = startId;
+			this.endId = endId;
 			this.length = length;
 			this.color = color;
+			this.cardColor = color.equals("GRAY") ? null : CardColor.valueOf(color);
 			this.id = id;
-			this.owner = owner;
-		}
-
-		private Connection(final Connection connection) {
-			this.start = connection.start;
-			this.end = connection.end;
-			this.length = connection.length;
-			this.color = connection.color;
-			this.id = connection.id;
-			this.owner = connection.owner;
+			this.index = index;
+			this.hash = Objects.hash(start, end, length, color, id);
 		}
 
 		public String getStart() {
@@ -396,6 +481,14 @@ public class Board {
 			return this.end;
 		}
 
+		public int getStartId() {
+			return this.startId;
+		}
+
+		public int getEndId() {
+			return this.endId;
+		}
+
 		public long getLength() {
 			return this.length;
 		}
@@ -404,12 +497,45 @@ public class Board {
 			return this.color;
 		}
 
-		public int getOwner() {
-			return this.owner;
+		/**
+		 * @return The color of the cards needed to claim this connection, or null if
+		 *         it is gray
+		 */
+		public CardColor getCardColor() {
+			return this.cardColor;
+		}
+
+		public boolean isGray() {
+			return this.cardColor == null;
 		}
 
 		public int getId() {
 			return this.id;
 		}
+
+		public int getIndex() {
+			return this.index;
+		}
+
+		// two connections are equal if they are the same route
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof Connection)) {
+				return false;
+			}
+
+			final Connection other = (Connection) obj;
+			return this.start.equals(other.start) && this.end.equals(other.end) && this.length == other.length
+					&& this.color.equals(other.color) && this.id == other.id;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
 	}
 }
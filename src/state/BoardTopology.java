@@ -0,0 +1,200 @@
+package state;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import state.Board.Connection;
+
+/**
+ * This class holds the parts of the board that never change during a game: the
+ * cities, the connections between them and the double routes. It is built once
+ * while the map is loaded and is then shared by every copy of the board, which
+ * only keeps track of who owns what.
+ */
+class BoardTopology {
+
+	private final List<Connection> connections;
+
+	// cities are numbered in the order they are first seen, and the names are only
+	// needed to talk to the driver
+	private final Map<String, Integer> cityIds;
+	private final List<String> cityNames;
+
+	// built when the topology is frozen
+	// the connections from city c are at adjacentConnections[adjacencyOffsets[c]]
+	// up to (but not including) adjacentConnections[adjacencyOffsets[c + 1]], and
+	// adjacentCities holds the city at the other end of each one
+	private int[] adjacencyOffsets;
+	private int[] adjacentConnections;
+	private int[] adjacentCities;
+
+	// for each connection, the other connections between the same two cities
+	private int[][] twins;
+
+	private volatile boolean isFrozen;
+
+	BoardTopology() {
+		this.connections = new ArrayList<>();
+		this.cityIds = new HashMap<>();
+		this.cityNames = new ArrayList<>();
+		this.isFrozen = false;
+	}
+
+	/**
+	 * Adds a connection to the map. This is only allowed until the topology is
+	 * frozen. Every connection takes at least one train, which the path queries
+	 * rely on.
+	 *
+	 * @return The new connection
+	 */
+	Connection addConnection(final String start, final String end, final long length, final String color)
+			throws IllegalStateException, IllegalArgumentException {
+		if (this.isFrozen) {
+			throw new IllegalStateException("Tried to add a connection to a board that is already in use!");
+		}
+
+		if (length < 1) {
+			throw new IllegalArgumentException("Connection from " + start + " to " + end + " has no length!");
+		}
+
+		final int startId = this.getOrAddCityId(start);
+		final int endId = this.getOrAddCityId(end);
+		final int index = this.connections.size();
+
+		// used to tell apart double routes with the same length and color
+		int id = 1;
+		for (final Connection connection : this.connections) {
+			if (connection.getStartId() == startId && connection.getEndId() == endId) {
+				id = 2;
+			}
+		}
+
+		final Connection connection = new Connection(start, end, startId, endId, length, color, id, index);
+		this.connections.add(connection);
+
+		return connection;
+	}
+
+	private int getOrAddCityId(final String city) {
+		final Integer id = this.cityIds.get(city);
+		if (id != null) {
+			return id;
+		}
+
+		this.cityIds.put(city, this.cityNames.size());
+		this.cityNames.add(city);
+
+		return this.cityNames.size() - 1;
+	}
+
+	/**
+	 * Builds the arrays used by the path queries. After this, no more connections
+	 * may be added.
+	 */
+	void freeze() {
+		if (!this.isFrozen) {
+			this.compile();
+		}
+	}
+
+	private synchronized void compile() {
+		if (this.isFrozen) {
+			return;
+		}
+
+		final int numCities = this.cityNames.size();
+		final int[] offsets = new int[numCities + 1];
+
+		// count the connections of each city, then turn the counts into offsets
+		for (final Connection connection : this.connections) {
+			offsets[connection.getStartId() + 1]++;
+			offsets[connection.getEndId() + 1]++;
+		}
+
+		for (int city = 0; city < numCities; city++) {
+			offsets[city + 1] += offsets[city];
+		}
+
+		final int[] adjacent = new int[offsets[numCities]];
+		final int[] cities = new int[offsets[numCities]];
+		final int[] next = Arrays.copyOf(offsets, numCities);
+
+		for (final Connection connection : this.connections) {
+			adjacent[next[connection.getStartId()]] = connection.getIndex();
+			cities[next[connection.getStartId()]++] = connection.getEndId();
+			adjacent[next[connection.getEndId()]] = connection.getIndex();
+			cities[next[connection.getEndId()]++] = connection.getStartId();
+		}
+
+		final int[][] connectionTwins = new int[this.connections.size()][];
+		for (final Connection connection : this.connections) {
+			int[] connectionTwin = new int[0];
+
+			for (int j = offsets[connection.getStartId()]; j < offsets[connection.getStartId() + 1]; j++) {
+				final Connection other = this.connections.get(adjacent[j]);
+
+				if (other.getStartId() == connection.getStartId() && other.getEndId() == connection.getEndId()
+						&& other.getIndex() != connection.getIndex()) {
+					connectionTwin = Arrays.copyOf(connectionTwin, connectionTwin.length + 1);
+					connectionTwin[connectionTwin.length - 1] = other.getIndex();
+				}
+			}
+
+			connectionTwins[connection.getIndex()] = connectionTwin;
+		}
+
+		this.adjacencyOffsets = offsets;
+		this.adjacentConnections = adjacent;
+		this.adjacentCities = cities;
+		this.twins = connectionTwins;
+		this.isFrozen = true;
+	}
+
+	Connection getConnection(final int index) {
+		return this.connections.get(index);
+	}
+
+	List<Connection> getConnections() {
+		return this.connections;
+	}
+
+	int getNumConnections() {
+		return this.connections.size();
+	}
+
+	int getNumCities() {
+		return this.cityNames.size();
+	}
+
+	int getCityId(final String city) throws IllegalArgumentException {
+		final Integer id = this.cityIds.get(city);
+		if (id == null) {
+			throw new IllegalArgumentException("Unknown city: " + city);
+		}
+
+		return id;
+	}
+
+	String getCityName(final int id) {
+		return this.cityNames.get(id);
+	}
+
+	int[] getAdjacencyOffsets() {
+		return this.adjacencyOffsets;
+	}
+
+	int[] getAdjacentConnections() {
+		return this.adjacentConnections;
+	}
+
+	int[] getAdjacentCities() {
+		return this.adjacentCities;
+	}
+
+	int[] getTwins(final int connection) {
+		return this.twins[connection];
+	}
+}
@@ -0,0 +1,39 @@
+package state;
+
+/**
+ * The colors of the train cards. Counts of cards are kept in int arrays indexed
+ * by {@link #ordinal()}, so the order of the colors must not change (it is also
+ * used to encode moves).
+ */
+public enum CardColor {
+	RED, ORANGE, YELLOW, GREEN, BLUE, PINK, WHITE, BLACK, WILD;
+
+	// values() makes a new array every time it is called
+	private static final CardColor[] VALUES = values();
+
+	public static final int NUM_COLORS = VALUES.length;
+
+	/**
+	 * @return The color with the given ordinal
+	 */
+	public static CardColor get(final int ordinal) {
+		return VALUES[ordinal];
+	}
+
+	/**
+	 * @return The given counts, written out like a map from color to count
+	 */
+	public static String format(final int[] counts) {
+		final StringBuilder builder = new StringBuilder("{");
+
+		for (int i = 0; i < NUM_COLORS; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+
+			builder.append(VALUES[i]).append('=').append(counts[i]);
+		}
+
+		return builder.append('}').toString();
+	}
+}
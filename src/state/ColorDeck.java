@@ -1,61 +1,81 @@
 package state;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
 public class ColorDeck {
 
-	public static final String[] COLORS = { "RED", "ORANGE", "YELLOW", "GREEN", "BLUE", "PINK", "WHITE", "BLACK",
-			"WILD" };
-
-	private final Map<String, Long> possiblyInDeck;
-	private final Map<String, Long> discard;
-	private final Map<String, Long> faceUp;
+	// the number of cards of each color (by ordinal) in each pile, along with the
+	// total of each pile so that it never has to be added up
+	private final int[] possiblyInDeck;
+	private final int[] discard;
+	private final int[] faceUp;
+	private int numPossiblyInDeck;
+	private int numDiscard;
+	private int numFaceUp;
 	private long numCardsInDrawPile;
 
+	// the colors drawn for a player's unknown cards, before they are handed over
+	// (never copied)
+	private final int[] drawn;
+
 	public ColorDeck() {
-		this.possiblyInDeck = new HashMap<>();
-		this.discard = new HashMap<>();
-		this.faceUp = new HashMap<>();
+		this.possiblyInDeck = new int[CardColor.NUM_COLORS];
+		this.discard = new int[CardColor.NUM_COLORS];
+		this.faceUp = new int[CardColor.NUM_COLORS];
+		this.numPossiblyInDeck = 0;
+		this.numDiscard = 0;
+		this.numFaceUp = 0;
 		this.numCardsInDrawPile = 0;
-
-		// initializing color mappings now will make things easier later
-		for (final String color : COLORS) {
-			this.discard.put(color, 0L);
-			this.faceUp.put(color, 0L);
-		}
+		this.drawn = new int[CardColor.NUM_COLORS];
 	}
 
 	public ColorDeck(final ColorDeck deck) {
-		this.possiblyInDeck = new HashMap<>();
-		for (final String color : deck.possiblyInDeck.keySet()) {
-			this.possiblyInDeck.put(color, Long.valueOf(deck.possiblyInDeck.get(color)));
-		}
-
-		this.discard = new HashMap<>();
-		for (final String color : deck.discard.keySet()) {
-			this.discard.put(color, Long.valueOf(deck.discard.get(color)));
-		}
-
-		this.faceUp = new HashMap<>();
-		for (final String color : deck.faceUp.keySet()) {
-			this.faceUp.put(color, Long.valueOf(deck.faceUp.get(color)));
-		}
+		this.possiblyInDeck = deck.possiblyInDeck.clone();
+		this.discard = deck.discard.clone();
+		this.faceUp = deck.faceUp.clone();
+		this.numPossiblyInDeck = deck.numPossiblyInDeck;
+		this.numDiscard = deck.numDiscard;
+		this.numFaceUp = deck.numFaceUp;
+		this.numCardsInDrawPile = deck.numCardsInDrawPile;
+		this.drawn = new int[CardColor.NUM_COLORS];
+	}
 
+	public void copyFrom(final ColorDeck deck) {
+		// overwrites every field with the values of the given deck without allocating
+		// anything new (used for undoing moves)
+		System.arraycopy(deck.possiblyInDeck, 0, this.possiblyInDeck, 0, CardColor.NUM_COLORS);
+		System.arraycopy(deck.discard, 0, this.discard, 0, CardColor.NUM_COLORS);
+		System.arraycopy(deck.faceUp, 0, this.faceUp, 0, CardColor.NUM_COLORS);
+		this.numPossiblyInDeck = deck.numPossiblyInDeck;
+		this.numDiscard = deck.numDiscard;
+		this.numFaceUp = deck.numFaceUp;
 		this.numCardsInDrawPile = deck.numCardsInDrawPile;
 	}
 
-	public Map<String, Long> getFaceUp() {
-		return this.faceUp;
+	/**
+	 * @return A copy of the number of face up cards of each color (by ordinal)
+	 */
+	public int[] getFaceUp() {
+		return this.faceUp.clone();
 	}
 
-	public Map<String, Long> getDiscard() {
-		return this.discard;
+	/**
+	 * @return A copy of the number of discarded cards of each color (by ordinal)
+	 */
+	public int[] getDiscard() {
+		return this.discard.clone();
 	}
 
-	public void initColor(final String color, final long count) {
-		this.possiblyInDeck.put(color, count);
+	public int getNumFaceUp(final CardColor color) {
+		return this.faceUp[color.ordinal()];
+	}
+
+	public void initColor(final CardColor color, final long count) {
+		this.numPossiblyInDeck += (int) count - this.possiblyInDeck[color.ordinal()];
+		this.possiblyInDeck[color.ordinal()] = (int) count;
 		this.numCardsInDrawPile += count;
 	}
 
@@ -72,81 +92,140 @@ public class ColorDeck {
 			// sweep face up to discard pile
 			// no need to worry about deck re-shuffle since this method is only called at
 			// the start of the game
-			for (final String color : this.faceUp.keySet()) {
-				this.discard.put(color, this.discard.get(color) + this.faceUp.get(color));
-				this.faceUp.put(color, 0L);
-			}
+			this.sweepFaceUp();
 
 			// draw 5 from the top of the deck
 			for (int i = 1; i <= 5; i++) {
 				System.out.print("Face up card " + i + ": ");
-				final String color = in.next().toUpperCase();
+				final CardColor color = CardColor.valueOf(in.next().toUpperCase());
 
 				this.removeCardFromDeckPossibility(color);
-				this.faceUp.put(color, this.faceUp.get(color) + 1);
+				this.addFaceUp(color);
 				this.numCardsInDrawPile--;
 			}
 
-			tryAgain = (this.faceUp.get("WILD") >= 3);
+			tryAgain = (this.faceUp[CardColor.WILD.ordinal()] >= 3);
 		}
 	}
 
-	public void removeCardFromDeckPossibility(final String color) {
-		this.possiblyInDeck.put(color, this.possiblyInDeck.get(color) - 1);
+	public void removeCardFromDeckPossibility(final CardColor color) {
+		this.possiblyInDeck[color.ordinal()]--;
+		this.numPossiblyInDeck--;
 	}
 
-	public void fillUnknownsRandomlyForPlayer(final Player player) {
-		final int numUnknowns = player.getNumUnknownColorCards();
+	private void addFaceUp(final CardColor color) {
+		this.faceUp[color.ordinal()]++;
+		this.numFaceUp++;
+	}
 
-		for (int i = 0; i < numUnknowns; i++) {
-			// find total possible cards it could be
-			long total = 0;
+	private void sweepFaceUp() {
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			this.discard[i] += this.faceUp[i];
+			this.faceUp[i] = 0;
+		}
 
-			for (final String color : this.possiblyInDeck.keySet()) {
-				total += this.possiblyInDeck.get(color);
-			}
+		this.numDiscard += this.numFaceUp;
+		this.numFaceUp = 0;
+	}
 
-			// pick a random number from 1 to total
-			final long n = ((long) (Math.random() * total)) + 1;
+	/**
+	 * @return A color picked at random, weighted by how many cards of it may still
+	 *         be in the deck
+	 */
+	private CardColor getRandomPossibleColor(final SplittableRandom random) throws IllegalStateException {
+		return CardColor.get(this.getRandomPossibleOrdinal(this.numPossiblyInDeck, random));
+	}
 
-			// iterate through the map until we find the nth card
-			long current = 0;
-			String colorToGive = null;
-			for (final String color : this.possiblyInDeck.keySet()) {
-				current += this.possiblyInDeck.get(color);
+	/**
+	 * Picks one of the cards that may still be in the deck at random, leaving out
+	 * the ones drawn so far.
+	 *
+	 * @param numLeft The number of cards that may be in the deck, less the ones
+	 *                drawn so far
+	 * @return The ordinal of the color of the card
+	 */
+	private int getRandomPossibleOrdinal(final int numLeft, final SplittableRandom random)
+			throws IllegalStateException {
+		if (numLeft <= 0) {
+			throw new IllegalStateException("Tried to draw a color card when none are left!");
+		}
 
-				if (current >= n) {
-					colorToGive = color;
-					break;
-				}
-			}
+		int n = random.nextInt(numLeft);
+
+		for (int i = 0; i < CardColor.NUM_COLORS - 1; i++) {
+			n -= this.possiblyInDeck[i] - this.drawn[i];
 
-			player.convertUnknownColorCardToKnownManually(colorToGive, this);
+			if (n < 0) {
+				return i;
+			}
 		}
+
+		return CardColor.NUM_COLORS - 1;
 	}
 
-	public long getNumFaceUp() {
-		long total = 0;
+	/**
+	 * Turns every unknown color card of the given player into a known card drawn at
+	 * random from the ones that may still be in the deck.
+	 *
+	 * @param filled Filled in with the number of cards of each color (by ordinal)
+	 *               that were handed over, so that
+	 *               {@link #undoFillUnknowns(int[])} can take them back
+	 */
+	public void fillUnknownsRandomlyForPlayer(final Player player, final SplittableRandom random,
+			final int[] filled) {
+		final int numUnknowns = player.getNumUnknownColorCards();
+		if (numUnknowns == 0) {
+			Arrays.fill(filled, 0);
+			return;
+		}
 
-		for (final String color : this.faceUp.keySet()) {
-			total += this.faceUp.get(color);
+		// draw every card without replacement first, then hand them over one color at a
+		// time
+		for (int i = 0; i < numUnknowns; i++) {
+			this.drawn[this.getRandomPossibleOrdinal(this.numPossiblyInDeck - i, random)]++;
 		}
 
-		return total;
-	}
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			this.possiblyInDeck[i] -= this.drawn[i];
+		}
 
-	public long getNumDiscard() {
-		long total = 0;
+		this.numPossiblyInDeck -= numUnknowns;
+		player.convertUnknownColorCardsToKnown(this.drawn);
 
-		for (final String color : this.discard.keySet()) {
-			total += this.discard.get(color);
+		System.arraycopy(this.drawn, 0, filled, 0, CardColor.NUM_COLORS);
+		Arrays.fill(this.drawn, 0);
+	}
+
+	/**
+	 * Puts the cards handed over by
+	 * {@link #fillUnknownsRandomlyForPlayer(Player, SplittableRandom, int[])} back
+	 * among the ones that may be in the deck (the player is left to the caller).
+	 */
+	void undoFillUnknowns(final int[] filled) {
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			this.possiblyInDeck[i] += filled[i];
+			this.numPossiblyInDeck += filled[i];
 		}
+	}
 
-		return total;
+	public long getNumFaceUp() {
+		return this.numFaceUp;
 	}
 
-	public void replenishFaceUpRandomly() {
-		if (this.getNumFaceUp() == 5 && this.faceUp.get("WILD") < 3) {
+	public long getNumDiscard() {
+		return this.numDiscard;
+	}
+
+	/**
+	 * @return Whether replenishing the face up cards would change anything (there
+	 *         are fewer than 5, or too many wilds)
+	 */
+	public boolean needsReplenishing() {
+		return this.numFaceUp < 5 || this.faceUp[CardColor.WILD.ordinal()] >= 3;
+	}
+
+	public void replenishFaceUpRandomly(final SplittableRandom random) {
+		if (!this.needsReplenishing()) {
 			return;
 		}
 
@@ -154,36 +233,15 @@ public class ColorDeck {
 		boolean keepGoing = true;
 		while (keepGoing) {
 			// draw a card from the deck if possible, otherwise we cannot keep going
-			if (this.getNumFaceUp() < 5) {
+			if (this.numFaceUp < 5) {
 				if (this.numCardsInDrawPile > 0) {
-					// find total possible cards it could be
-					long total = 0;
-
-					for (final String color : this.possiblyInDeck.keySet()) {
-						total += this.possiblyInDeck.get(color);
-					}
-
-					// pick a random number from 1 to total
-					final long n = ((long) (Math.random() * total)) + 1;
-
-					// iterate through the map until we find the nth card
-					long current = 0;
-					String colorToGive = null;
-
-					for (final String color : this.possiblyInDeck.keySet()) {
-						current += this.possiblyInDeck.get(color);
-
-						if (current >= n) {
-							colorToGive = color;
-							break;
-						}
-					}
+					final CardColor colorToGive = this.getRandomPossibleColor(random);
 
 					this.removeCardFromDeckPossibility(colorToGive);
-					this.faceUp.put(colorToGive, this.faceUp.get(colorToGive) + 1);
+					this.addFaceUp(colorToGive);
 					this.numCardsInDrawPile--;
 				} else {
-					if (this.getNumDiscard() > 0) {
+					if (this.numDiscard > 0) {
 						this.convertDiscardToDraw();
 					} else {
 						keepGoing = false;
@@ -192,11 +250,8 @@ public class ColorDeck {
 			}
 			// if already at 5 cards, sweep if necessary, up to 3 times
 			else {
-				if (this.faceUp.get("WILD") >= 3) {
-					for (final String color : this.faceUp.keySet()) {
-						this.discard.put(color, this.discard.get(color) + this.faceUp.get(color));
-						this.faceUp.put(color, 0L);
-					}
+				if (this.faceUp[CardColor.WILD.ordinal()] >= 3) {
+					this.sweepFaceUp();
 					numSweeps++;
 
 					if (numSweeps == 3) {
@@ -210,7 +265,7 @@ public class ColorDeck {
 	}
 
 	public void replenishFaceUp(final Scanner in) {
-		if (this.getNumFaceUp() == 5 && this.faceUp.get("WILD") < 3) {
+		if (this.numFaceUp == 5 && this.faceUp[CardColor.WILD.ordinal()] < 3) {
 			return;
 		}
 
@@ -218,17 +273,17 @@ public class ColorDeck {
 		boolean keepGoing = true;
 		while (keepGoing) {
 			// draw a card from the deck if possible, otherwise we cannot keep going
-			if (this.getNumFaceUp() < 5) {
+			if (this.numFaceUp < 5) {
 				if (this.numCardsInDrawPile > 0) {
 					System.out.print("New face up card: ");
-					final String color = in.next().toUpperCase();
+					final CardColor color = CardColor.valueOf(in.next().toUpperCase());
 					in.nextLine(); // consume new line
 
 					this.removeCardFromDeckPossibility(color);
-					this.faceUp.put(color, this.faceUp.get(color) + 1);
+					this.addFaceUp(color);
 					this.numCardsInDrawPile--;
 				} else {
-					if (this.getNumDiscard() > 0) {
+					if (this.numDiscard > 0) {
 						this.convertDiscardToDraw();
 					} else {
 						keepGoing = false;
@@ -237,11 +292,8 @@ public class ColorDeck {
 			}
 			// if already at 5 cards, sweep if necessary, up to 3 times
 			else {
-				if (this.faceUp.get("WILD") >= 3) {
-					for (final String color : this.faceUp.keySet()) {
-						this.discard.put(color, this.discard.get(color) + this.faceUp.get(color));
-						this.faceUp.put(color, 0L);
-					}
+				if (this.faceUp[CardColor.WILD.ordinal()] >= 3) {
+					this.sweepFaceUp();
 					numSweeps++;
 
 					if (numSweeps == 3) {
@@ -255,16 +307,26 @@ public class ColorDeck {
 	}
 
 	public boolean canDrawFromTop() {
-		return this.numCardsInDrawPile > 0 || this.getNumDiscard() > 0;
+		return this.numCardsInDrawPile > 0 || this.numDiscard > 0;
 	}
 
 	private void convertDiscardToDraw() {
-		for (final String color : this.discard.keySet()) {
-			this.possiblyInDeck.put(color, this.possiblyInDeck.get(color) + this.discard.get(color));
-			this.numCardsInDrawPile += this.discard.get(color);
-
-			this.discard.put(color, 0L);
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			this.possiblyInDeck[i] += this.discard[i];
+			this.discard[i] = 0;
 		}
+
+		this.numPossiblyInDeck += this.numDiscard;
+		this.numCardsInDrawPile += this.numDiscard;
+		this.numDiscard = 0;
+	}
+
+	/**
+	 * @return Whether drawing from the top would shuffle the discard pile into the
+	 *         deck first
+	 */
+	public boolean isDrawPileEmpty() {
+		return this.numCardsInDrawPile == 0;
 	}
 
 	public void drawUnknownFromDeck() {
@@ -275,11 +337,52 @@ public class ColorDeck {
 		this.numCardsInDrawPile--;
 	}
 
-	public void drawFaceUp(final String color) {
-		this.faceUp.put(color, this.faceUp.get(color) - 1);
+	/**
+	 * Puts back a card drawn by {@link #drawUnknownFromDeck()}, which must not have
+	 * shuffled the discard pile into the deck.
+	 */
+	void undoDrawUnknownFromDeck() {
+		this.numCardsInDrawPile++;
+	}
+
+	public void drawFaceUp(final CardColor color) {
+		this.faceUp[color.ordinal()]--;
+		this.numFaceUp--;
+	}
+
+	void undoDrawFaceUp(final CardColor color) {
+		this.addFaceUp(color);
+	}
+
+	public void sendKnownToDiscard(final long count, final CardColor color) {
+		this.discard[color.ordinal()] += (int) count;
+		this.numDiscard += (int) count;
+	}
+
+	void takeBackFromDiscard(final long count, final CardColor color) {
+		this.discard[color.ordinal()] -= (int) count;
+		this.numDiscard -= (int) count;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof ColorDeck)) {
+			return false;
+		}
+
+		final ColorDeck other = (ColorDeck) obj;
+		return this.numCardsInDrawPile == other.numCardsInDrawPile
+				&& Arrays.equals(this.possiblyInDeck, other.possiblyInDeck)
+				&& Arrays.equals(this.discard, other.discard) && Arrays.equals(this.faceUp, other.faceUp);
 	}
 
-	public void sendKnownToDiscard(final long count, final String color) {
-		this.discard.put(color, this.discard.get(color) + count);
+	@Override
+	public int hashCode() {
+		return Objects.hash(Arrays.hashCode(this.possiblyInDeck), Arrays.hashCode(this.discard),
+				Arrays.hashCode(this.faceUp), this.numCardsInDrawPile);
 	}
 }
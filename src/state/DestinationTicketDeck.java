@@ -1,56 +1,122 @@
 package state;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 import data.DestinationTicket;
 
 public class DestinationTicketDeck {
 
-	private final List<DestinationTicket> possiblyInDeck;
-	private final Set<DestinationTicket> knownDiscard;
+	// every ticket in the game, by index, and the same tickets by their cities -
+	// only added to while the game is loaded, and shared by every copy of this
+	// deck
+	private final List<DestinationTicket> tickets;
+	private final Map<String, DestinationTicket> ticketsByCities;
+
+	// sets of tickets (by index), both kept in one array so that copying a deck is
+	// a single clone - the tickets that may still be in the deck come first, then
+	// the tickets known to have been discarded
+	private int numWords;
+	private long[] bits;
 
 	private int numCardsInDrawPile;
 	private int numDiscards;
 
 	public DestinationTicketDeck() {
-		this.possiblyInDeck = new ArrayList<>();
-		this.knownDiscard = new HashSet<>();
+		this.tickets = new ArrayList<>();
+		this.ticketsByCities = new HashMap<>();
+		this.numWords = 0;
+		this.bits = new long[0];
 		this.numCardsInDrawPile = 0;
 		this.numDiscards = 0;
 	}
 
 	public DestinationTicketDeck(final DestinationTicketDeck deck) {
-		this.possiblyInDeck = new ArrayList<>();
-		for (final DestinationTicket ticket : deck.possiblyInDeck) {
-			this.possiblyInDeck.add(ticket);
-		}
+		this.tickets = deck.tickets;
+		this.ticketsByCities = deck.ticketsByCities;
+		this.numWords = deck.numWords;
+		this.bits = deck.bits.clone();
+		this.numCardsInDrawPile = deck.numCardsInDrawPile;
+		this.numDiscards = deck.numDiscards;
+	}
 
-		this.knownDiscard = new HashSet<>();
-		for (final DestinationTicket ticket : deck.knownDiscard) {
-			this.knownDiscard.add(ticket);
+	public void copyFrom(final DestinationTicketDeck deck) {
+		// overwrites every field with the values of the given deck (used for undoing
+		// moves)
+		if (this.bits.length == deck.bits.length) {
+			System.arraycopy(deck.bits, 0, this.bits, 0, this.bits.length);
+		} else {
+			this.bits = deck.bits.clone();
 		}
 
+		this.numWords = deck.numWords;
 		this.numCardsInDrawPile = deck.numCardsInDrawPile;
 		this.numDiscards = deck.numDiscards;
 	}
 
+	private int getPossiblyInDeckOffset() {
+		return 0;
+	}
+
+	private int getKnownDiscardOffset() {
+		return this.numWords;
+	}
+
+	/**
+	 * @return A new set of the tickets known to have been discarded
+	 */
 	public Set<DestinationTicket> getKnownDiscards() {
-		return this.knownDiscard;
+		final Set<DestinationTicket> knownDiscards = new HashSet<>();
+
+		int index = Bits.next(this.bits, this.getKnownDiscardOffset(), this.numWords, 0);
+		while (index != -1) {
+			knownDiscards.add(this.tickets.get(index));
+			index = Bits.next(this.bits, this.getKnownDiscardOffset(), this.numWords, index + 1);
+		}
+
+		return knownDiscards;
 	}
 
 	public void addDiscards(final int count) {
 		this.numDiscards += count;
 	}
 
-	public void initDestinationTicket(final DestinationTicket destinationTicket) {
-		this.possiblyInDeck.add(destinationTicket);
+	/**
+	 * Adds a new ticket to the game, at the bottom of the deck.
+	 *
+	 * @return The ticket
+	 */
+	public DestinationTicket initDestinationTicket(final String start, final String end, final long points) {
+		final DestinationTicket ticket = new DestinationTicket(this.tickets.size(), start, end, points);
+		this.tickets.add(ticket);
+		this.ticketsByCities.put(getCitiesKey(start, end), ticket);
+
+		// the sets may need another word, in which case they are laid out again
+		final int numWords = Bits.getNumWords(this.tickets.size());
+		if (numWords != this.numWords) {
+			final long[] bits = new long[2 * numWords];
+			System.arraycopy(this.bits, this.getPossiblyInDeckOffset(), bits, 0, this.numWords);
+			System.arraycopy(this.bits, this.getKnownDiscardOffset(), bits, numWords, this.numWords);
+
+			this.numWords = numWords;
+			this.bits = bits;
+		}
+
+		Bits.set(this.bits, this.getPossiblyInDeckOffset(), ticket.getIndex());
 		this.numCardsInDrawPile++;
+
+		return ticket;
+	}
+
+	private static String getCitiesKey(final String start, final String end) {
+		return start + " - " + end;
 	}
 
 	public void dealStartingThreeToPlayer(final Player player) {
@@ -59,33 +125,49 @@ public class DestinationTicketDeck {
 	}
 
 	public void removeCardFromDeckPossiblility(final DestinationTicket ticket) {
-		this.possiblyInDeck.remove(ticket);
+		Bits.clear(this.bits, this.getPossiblyInDeckOffset(), ticket.getIndex());
 	}
 
+	void returnCardToDeckPossibility(final DestinationTicket ticket) {
+		Bits.set(this.bits, this.getPossiblyInDeckOffset(), ticket.getIndex());
+	}
+
+	/**
+	 * @return The ticket between the given cities if it may still be in the deck,
+	 *         otherwise null
+	 */
 	public DestinationTicket getTicket(final String start, final String end) {
-		for (final DestinationTicket ticket : this.possiblyInDeck) {
-			if (ticket.getStart().equals(start) && ticket.getEnd().equals(end)) {
-				return ticket;
-			}
+		final DestinationTicket ticket = this.ticketsByCities.get(getCitiesKey(start, end));
+
+		if (ticket == null || !Bits.get(this.bits, this.getPossiblyInDeckOffset(), ticket.getIndex())) {
+			return null;
 		}
 
-		return null;
+		return ticket;
 	}
 
-	public void fillUnknownsForPlayerSmartly(final Player player, final Board board, final int playerIndex) {
+	public void fillUnknownsForPlayerSmartly(final Player player, final Board board, final int playerIndex,
+			final SplittableRandom random) {
 		if (player.getNumUnknownDestinationTickets() == 0) {
 			return;
 		}
 
+		final int offset = this.getPossiblyInDeckOffset();
+
 		// if the player has built no connections, assign them random
 		// tickets
 		if (board.getConnectionsForPlayer(playerIndex).isEmpty()) {
-			final List<DestinationTicket> tickets = new ArrayList<>();
-			tickets.addAll(this.possiblyInDeck);
+			int numTickets = Bits.count(this.bits, offset, this.numWords);
+
+			while (player.getNumUnknownDestinationTickets() > 0 && numTickets > 0) {
+				// skip to a random one of the tickets that are left
+				int index = Bits.next(this.bits, offset, this.numWords, 0);
+				for (int i = random.nextInt(numTickets); i > 0; i--) {
+					index = Bits.next(this.bits, offset, this.numWords, index + 1);
+				}
 
-			while (player.getNumUnknownDestinationTickets() > 0) {
-				final DestinationTicket randomTicket = tickets.remove((int) (Math.random() * tickets.size()));
-				player.convertUnknownDestinationTicketToKnownManually(randomTicket, this);
+				player.convertUnknownDestinationTicketToKnownManually(this.tickets.get(index), this);
+				numTickets--;
 			}
 
 			return;
@@ -94,50 +176,107 @@ public class DestinationTicketDeck {
 		// the closer they are to completing a ticket, the more likely they are to have
 		// it in their hand
 		// ties will be broken by highest score
-		final Comparator<DestinationTicket> comparator = new Comparator<>() {
-			@Override
-			public int compare(final DestinationTicket ticket1, final DestinationTicket ticket2) {
-				final int result = Integer.compare(
-						board.getMinConnectionsBetween(ticket1.getStart(), ticket1.getEnd(), playerIndex),
-						board.getMinConnectionsBetween(ticket2.getStart(), ticket2.getEnd(), playerIndex));
-
-				if (result != 0) {
-					return result;
+		// each ticket is scored once, by a search that stops at the other end of the
+		// ticket
+		final int[] numConnections = new int[this.tickets.size()];
+		Arrays.fill(numConnections, Integer.MAX_VALUE);
+
+		int index = Bits.next(this.bits, offset, this.numWords, 0);
+		while (index != -1) {
+			final DestinationTicket ticket = this.tickets.get(index);
+			numConnections[index] = board.getMinConnectionsBetween(ticket.getStart(), ticket.getEnd(), playerIndex);
+			index = Bits.next(this.bits, offset, this.numWords, index + 1);
+		}
+
+		while (player.getNumUnknownDestinationTickets() > 0) {
+			int best = -1;
+
+			for (int i = 0; i < numConnections.length; i++) {
+				// tickets that are not in the deck (or were just picked) are marked with
+				// Integer.MAX_VALUE
+				if (numConnections[i] == Integer.MAX_VALUE) {
+					continue;
 				}
 
-				return -Long.compare(ticket1.getPoints(), ticket2.getPoints());
+				if (best == -1 || numConnections[i] < numConnections[best]) {
+					best = i;
+				} else if (numConnections[i] == numConnections[best]
+						&& this.tickets.get(i).getPoints() > this.tickets.get(best).getPoints()) {
+					best = i;
+				}
 			}
-		};
-
-		final Queue<DestinationTicket> sortedTickets = new PriorityQueue<>(comparator);
 
-		for (final DestinationTicket ticket : this.possiblyInDeck) {
-			sortedTickets.add(ticket);
-		}
+			if (best == -1) {
+				return;
+			}
 
-		while (player.getNumUnknownDestinationTickets() > 0) {
-			final DestinationTicket ticket = sortedTickets.poll();
-			player.convertUnknownDestinationTicketToKnownManually(ticket, this);
+			player.convertUnknownDestinationTicketToKnownManually(this.tickets.get(best), this);
+			numConnections[best] = Integer.MAX_VALUE;
 		}
 	}
 
 	public void discardKnownTicket(final DestinationTicket ticket) {
-		this.knownDiscard.add(ticket);
+		Bits.set(this.bits, this.getKnownDiscardOffset(), ticket.getIndex());
 		this.numDiscards++;
 	}
 
+	void undoDiscardKnownTicket(final DestinationTicket ticket) {
+		Bits.clear(this.bits, this.getKnownDiscardOffset(), ticket.getIndex());
+		this.numDiscards--;
+	}
+
 	public boolean canDrawThreeTickets() {
 		return this.numCardsInDrawPile + this.numDiscards >= 3;
 	}
 
+	/**
+	 * @return Whether three tickets can be drawn without shuffling the discards
+	 *         into the deck first
+	 */
+	public boolean canDrawThreeWithoutReshuffling() {
+		return this.numCardsInDrawPile >= 3;
+	}
+
 	public void drawThreeUnknown() {
 		if (this.numCardsInDrawPile < 3) {
-			this.possiblyInDeck.addAll(this.knownDiscard);
-			this.knownDiscard.clear();
+			// the discards are shuffled back in
+			for (int i = 0; i < this.numWords; i++) {
+				this.bits[this.getPossiblyInDeckOffset() + i] |= this.bits[this.getKnownDiscardOffset() + i];
+				this.bits[this.getKnownDiscardOffset() + i] = 0;
+			}
+
 			this.numCardsInDrawPile += this.numDiscards;
 			this.numDiscards = 0;
 		}
 
 		this.numCardsInDrawPile -= 3;
 	}
+
+	/**
+	 * Puts back the tickets drawn by {@link #drawThreeUnknown()}, which must not
+	 * have shuffled the discards into the deck.
+	 */
+	void undoDrawThreeUnknown() {
+		this.numCardsInDrawPile += 3;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof DestinationTicketDeck)) {
+			return false;
+		}
+
+		final DestinationTicketDeck other = (DestinationTicketDeck) obj;
+		return this.numCardsInDrawPile == other.numCardsInDrawPile && this.numDiscards == other.numDiscards
+				&& Arrays.equals(this.bits, other.bits);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(Arrays.hashCode(this.bits), this.numCardsInDrawPile, this.numDiscards);
+	}
 }
@@ -0,0 +1,119 @@
+package state;
+
+/**
+ * The longest continuous route of a player: the longest trail (a path that may
+ * pass through a city more than once, but never uses a connection twice) over
+ * the connections the player owns, measured in trains.
+ *
+ * Each group of joined cities is searched on its own with a depth-first search
+ * over the unused connections. A trail that cannot be made any longer ends at a
+ * city with none of its connections left, so unless every city of the group
+ * has an even number of connections (in which case one trail uses them all),
+ * the longest trail starts at a city with an odd number of them. The search
+ * gives up on a trail as soon as it could not beat the best one so far even
+ * with every connection left in the group.
+ */
+final class LongestRoutes {
+
+	private final Board board;
+	private final int owner;
+	private final int[] adjacencyOffsets;
+	private final int[] adjacentConnections;
+	private final int[] adjacentCities;
+
+	// the connections the trail being searched has used so far
+	private final boolean[] isUsed;
+	private int best;
+
+	private LongestRoutes(final Board board, final int owner) {
+		final BoardTopology topology = board.getTopology();
+
+		this.board = board;
+		this.owner = owner;
+		this.adjacencyOffsets = topology.getAdjacencyOffsets();
+		this.adjacentConnections = topology.getAdjacentConnections();
+		this.adjacentCities = topology.getAdjacentCities();
+		this.isUsed = new boolean[topology.getNumConnections()];
+		this.best = 0;
+	}
+
+	/**
+	 * @param board      The board
+	 * @param components The groups of cities joined on the board
+	 * @param owner      The player
+	 * @return The length of the longest route of the given player
+	 */
+	static int getLongestRouteLength(final Board board, final OwnedComponents components, final int owner) {
+		final BoardTopology topology = board.getTopology();
+		topology.freeze();
+
+		final int numCities = topology.getNumCities();
+
+		// the number of connections of each city, and the total length of each group
+		// (at the root city of the group)
+		final int[] degrees = new int[numCities];
+		final int[] groupLengths = new int[numCities];
+		final boolean[] hasOddCity = new boolean[numCities];
+
+		for (final Board.Connection connection : board.getConnectionsForPlayer(owner)) {
+			degrees[connection.getStartId()]++;
+			degrees[connection.getEndId()]++;
+			groupLengths[components.find(owner, connection.getStartId())] += (int) connection.getLength();
+		}
+
+		for (int city = 0; city < numCities; city++) {
+			if (degrees[city] % 2 == 1) {
+				hasOddCity[components.find(owner, city)] = true;
+			}
+		}
+
+		final LongestRoutes search = new LongestRoutes(board, owner);
+
+		// the groups with a trail through every connection first, as they may make the
+		// search of the others much shorter
+		for (int city = 0; city < numCities; city++) {
+			if (degrees[city] > 0 && !hasOddCity[city] && components.find(owner, city) == city) {
+				search.best = Math.max(search.best, groupLengths[city]);
+			}
+		}
+
+		for (int city = 0; city < numCities; city++) {
+			final int root = components.find(owner, city);
+
+			if (degrees[city] % 2 == 1 && groupLengths[root] > search.best) {
+				search.extend(city, 0, groupLengths[root]);
+			}
+		}
+
+		return search.best;
+	}
+
+	/**
+	 * Tries every way of making the trail that ends at the given city longer.
+	 *
+	 * @param city      The city at the end of the trail
+	 * @param length    The length of the trail
+	 * @param remaining The total length of the unused connections in the group
+	 */
+	private void extend(final int city, final int length, final int remaining) {
+		if (length > this.best) {
+			this.best = length;
+		}
+
+		if (length + remaining <= this.best) {
+			return;
+		}
+
+		for (int j = this.adjacencyOffsets[city]; j < this.adjacencyOffsets[city + 1]; j++) {
+			final int connection = this.adjacentConnections[j];
+
+			if (!this.isUsed[connection] && this.board.isOwnedBy(connection, this.owner)) {
+				final int connectionLength = (int) this.board.getConnection(connection).getLength();
+
+				this.isUsed[connection] = true;
+				this.extend(this.adjacentCities[j], length + connectionLength, remaining - connectionLength);
+				this.isUsed[connection] = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package state;
+
+import java.util.Arrays;
+
+/**
+ * For each player, the groups of cities joined by the connections the player
+ * owns, as a disjoint-set forest over the city ids. Sets are joined by size and
+ * paths are never compressed, so a find takes at most log(cities) steps and
+ * the most recent joins can be taken back again, which is how connections are
+ * given back when a move is undone. Giving back any other connection means
+ * building the sets again from the connections that are still owned.
+ */
+final class OwnedComponents {
+
+	private final int numPlayers;
+	private final int numCities;
+
+	// the parent and set size of each city of each player, at
+	// player * numCities + city
+	private final int[] parents;
+	private final int[] sizes;
+
+	// for each join (or connection that joined nothing) not yet taken back: the
+	// connection, its owner, and the root that was put under another one (or -1)
+	private int[] history;
+	private int historySize;
+
+	OwnedComponents(final int numPlayers, final int numCities) {
+		this.numPlayers = numPlayers;
+		this.numCities = numCities;
+		this.parents = new int[numPlayers * numCities];
+		this.sizes = new int[numPlayers * numCities];
+		this.history = new int[0];
+		this.historySize = 0;
+
+		this.clear();
+	}
+
+	/**
+	 * Copies the sets, but not the history of how they came to be, which is only
+	 * worth keeping for the board that is being searched.
+	 */
+	OwnedComponents(final OwnedComponents components) {
+		this.numPlayers = components.numPlayers;
+		this.numCities = components.numCities;
+		this.parents = components.parents.clone();
+		this.sizes = components.sizes.clone();
+		this.history = new int[0];
+		this.historySize = 0;
+	}
+
+	private void clear() {
+		for (int i = 0; i < this.parents.length; i++) {
+			this.parents[i] = i % this.numCities;
+		}
+
+		Arrays.fill(this.sizes, 1);
+		this.historySize = 0;
+	}
+
+	/**
+	 * @return Whether the given player owns a path between the two cities
+	 */
+	boolean isConnected(final int player, final int start, final int end) {
+		return this.find(player, start) == this.find(player, end);
+	}
+
+	/**
+	 * @return The city at the root of the set of the given city, which is the same
+	 *         for every city in the set
+	 */
+	int find(final int player, int city) {
+		final int offset = player * this.numCities;
+
+		while (this.parents[offset + city] != city) {
+			city = this.parents[offset + city];
+		}
+
+		return city;
+	}
+
+	/**
+	 * Joins the ends of a connection the given player has just claimed.
+	 */
+	void add(final Board.Connection connection, final int player) {
+		final int offset = player * this.numCities;
+		int root = this.find(player, connection.getStartId());
+		int other = this.find(player, connection.getEndId());
+
+		if (root != other) {
+			if (this.sizes[offset + root] < this.sizes[offset + other]) {
+				final int swap = root;
+				root = other;
+				other = swap;
+			}
+
+			this.parents[offset + other] = root;
+			this.sizes[offset + root] += this.sizes[offset + other];
+		} else {
+			other = -1;
+		}
+
+		if (this.history.length < 3 * (this.historySize + 1)) {
+			this.history = Arrays.copyOf(this.history, Math.max(48, 2 * this.history.length));
+		}
+
+		this.history[3 * this.historySize] = connection.getIndex();
+		this.history[3 * this.historySize + 1] = player;
+		this.history[3 * this.historySize + 2] = other;
+		this.historySize++;
+	}
+
+	/**
+	 * Splits the sets again after the given player has given back a connection.
+	 * The board must no longer list the connection as owned.
+	 */
+	void remove(final Board board, final Board.Connection connection, final int player) {
+		final int top = 3 * (this.historySize - 1);
+
+		if (this.historySize == 0 || this.history[top] != connection.getIndex() || this.history[top + 1] != player) {
+			this.rebuild(board);
+			return;
+		}
+
+		final int other = this.history[top + 2];
+		if (other != -1) {
+			final int offset = player * this.numCities;
+
+			this.sizes[offset + this.parents[offset + other]] -= this.sizes[offset + other];
+			this.parents[offset + other] = other;
+		}
+
+		this.historySize--;
+	}
+
+	private void rebuild(final Board board) {
+		this.clear();
+
+		for (int player = 0; player < this.numPlayers; player++) {
+			for (final Board.Connection connection : board.getConnectionsForPlayer(player)) {
+				this.add(connection, player);
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package state;
+
+/**
+ * The distances in trains (as in {@link Board#getMinTrainsBetween}), or in
+ * connections, from some of the cities to every other city, for each player.
+ * The distances from a city are worked out the first time they are asked for,
+ * which in practice means the ends of the players' tickets, and are then kept
+ * current as connections are claimed and given back, so that most queries are
+ * a lookup.
+ *
+ * When a connection gets cheaper for a player, the lower distances are pushed
+ * out from its ends. When it gets more expensive, the distances stay the same
+ * unless the connection was on a shortest path, in which case they are worked
+ * out again the next time they are asked for.
+ *
+ * Several threads may ask for distances at once, as long as none of them
+ * changes the board. Each set of distances is worked out into a new object and
+ * only then stored, so a thread either sees all of it or none of it (and then
+ * works it out itself).
+ */
+final class PathDistances {
+
+	private final int numPlayers;
+	private final int numCities;
+
+	// whether an open connection costs its length (true) or 1 (false)
+	private final boolean countTrains;
+
+	// distances[player][city] holds the distances from the city for the player,
+	// or null if they have not been worked out since they last went stale
+	private final Distances[][] distances;
+
+	// the costs of the connections about to change, for each player, saved by
+	// saveCosts
+	private int[] savedCosts;
+
+	PathDistances(final int numPlayers, final int numCities, final boolean countTrains) {
+		this.numPlayers = numPlayers;
+		this.numCities = numCities;
+		this.countTrains = countTrains;
+		this.distances = new Distances[numPlayers][numCities];
+		this.savedCosts = new int[0];
+	}
+
+	/**
+	 * @return The fewest trains (or connections) the given player needs to join
+	 *         the two cities, or 1000 if they cannot be joined
+	 */
+	int get(final Board board, final int owner, final int start, final int end) {
+		final Distances fromEnd = this.distances[owner][end];
+		if (this.distances[owner][start] == null && fromEnd != null) {
+			// the costs are the same both ways
+			return fromEnd.values[start];
+		}
+
+		return this.getFrom(board, owner, start)[end];
+	}
+
+	/**
+	 * @return The distances from the given city for the given player, which must
+	 *         not be changed
+	 */
+	int[] getFrom(final Board board, final int owner, final int start) {
+		Distances fromStart = this.distances[owner][start];
+
+		if (fromStart == null) {
+			fromStart = new Distances(board, owner, start, this.numCities, this.countTrains);
+			this.distances[owner][start] = fromStart;
+		}
+
+		return fromStart.values;
+	}
+
+	/**
+	 * Saves the cost for each player of the given connection and its twins, the
+	 * only connections whose cost changes when it is claimed or given back. This
+	 * must be called just before the change, and
+	 * {@link #update(Board, int)} just after it.
+	 */
+	void saveCosts(final Board board, final int connection) {
+		final int[] twins = board.getTopology().getTwins(connection);
+		final int numCosts = (1 + twins.length) * this.numPlayers;
+
+		if (this.savedCosts.length < numCosts) {
+			this.savedCosts = new int[numCosts];
+		}
+
+		for (int player = 0; player < this.numPlayers; player++) {
+			this.savedCosts[player] = board.getCost(connection, player, this.countTrains);
+
+			for (int i = 0; i < twins.length; i++) {
+				this.savedCosts[(1 + i) * this.numPlayers + player] = board.getCost(twins[i], player, this.countTrains);
+			}
+		}
+	}
+
+	/**
+	 * Brings the distances up to date with the costs of the given connection and
+	 * its twins after a change.
+	 */
+	void update(final Board board, final int connection) {
+		final int[] twins = board.getTopology().getTwins(connection);
+
+		for (int player = 0; player < this.numPlayers; player++) {
+			// the distances can only be kept if no connection that got more expensive was
+			// on a shortest path, so check every one of those before lowering anything
+			for (int i = 0; i <= twins.length; i++) {
+				final Board.Connection changed = board.getConnection((i == 0) ? connection : twins[i - 1]);
+				final int oldCost = this.savedCosts[i * this.numPlayers + player];
+
+				if (board.getCost(changed.getIndex(), player, this.countTrains) > oldCost) {
+					this.invalidateIfTight(player, changed, oldCost);
+				}
+			}
+
+			for (int i = 0; i <= twins.length; i++) {
+				final Board.Connection changed = board.getConnection((i == 0) ? connection : twins[i - 1]);
+				final int newCost = board.getCost(changed.getIndex(), player, this.countTrains);
+
+				if (newCost < this.savedCosts[i * this.numPlayers + player]) {
+					this.lower(board, player, changed, newCost);
+				}
+			}
+		}
+	}
+
+	private void invalidateIfTight(final int player, final Board.Connection connection, final int oldCost) {
+		if (oldCost >= ShortestPaths.UNREACHABLE) {
+			return;
+		}
+
+		for (int city = 0; city < this.numCities; city++) {
+			if (this.distances[player][city] != null) {
+				final int[] dist = this.distances[player][city].values;
+				final int startDist = dist[connection.getStartId()];
+				final int endDist = dist[connection.getEndId()];
+
+				if (startDist + oldCost == endDist || endDist + oldCost == startDist) {
+					this.distances[player][city] = null;
+				}
+			}
+		}
+	}
+
+	private void lower(final Board board, final int player, final Board.Connection connection, final int newCost) {
+		if (newCost >= ShortestPaths.UNREACHABLE) {
+			return;
+		}
+
+		for (int city = 0; city < this.numCities; city++) {
+			if (this.distances[player][city] != null) {
+				final int[] dist = this.distances[player][city].values;
+
+				ShortestPaths.lowerDistances(board, player, this.countTrains, dist, connection.getEndId(),
+						dist[connection.getStartId()] + newCost);
+				ShortestPaths.lowerDistances(board, player, this.countTrains, dist, connection.getStartId(),
+						dist[connection.getEndId()] + newCost);
+			}
+		}
+	}
+
+	/**
+	 * The distances from one city for one player. They are worked out in the
+	 * constructor, so that they are seen in full by any thread that sees the
+	 * object, and after that only change along with the board.
+	 */
+	private static final class Distances {
+		private final int[] values;
+
+		private Distances(final Board board, final int owner, final int start, final int numCities,
+				final boolean countTrains) {
+			this.values = new int[numCities];
+			ShortestPaths.getDistances(board, start, owner, countTrains, this.values);
+		}
+	}
+}
@@ -1,16 +1,17 @@
 package state;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 
 import data.DestinationTicket;
 import state.Board.Connection;
 
 public class Player {
 
-	private final Map<String, Long> knownColorCards;
+	// the number of known cards of each color, by ordinal
+	private final int[] knownColorCards;
 	private final List<DestinationTicket> knownDestinationTickets;
 	private int numUnknownColorCards;
 	private int numUnknownDestinationTickets;
@@ -22,7 +23,7 @@ public class Player {
 	private int longestRouteLength;
 
 	public Player(final long numStartingCars) {
-		this.knownColorCards = new HashMap<>();
+		this.knownColorCards = new int[CardColor.NUM_COLORS];
 		this.knownDestinationTickets = new ArrayList<>();
 		this.numUnknownColorCards = 0;
 		this.numUnknownDestinationTickets = 0;
@@ -30,18 +31,10 @@ public class Player {
 		this.score = 0;
 		this.numCompletedTickets = 0;
 		this.longestRouteLength = 0;
-
-		// initializing color mappings now will make things easier later
-		for (final String color : ColorDeck.COLORS) {
-			this.knownColorCards.put(color, 0L);
-		}
 	}
 
 	public Player(final Player player) {
-		this.knownColorCards = new HashMap<>();
-		for (final String color : player.knownColorCards.keySet()) {
-			this.knownColorCards.put(color, Long.valueOf(player.knownColorCards.get(color)));
-		}
+		this.knownColorCards = player.knownColorCards.clone();
 
 		this.knownDestinationTickets = new ArrayList<>();
 		for (final DestinationTicket ticket : player.knownDestinationTickets) {
@@ -68,12 +61,35 @@ public class Player {
 		this.numUnknownDestinationTickets += numTickets;
 	}
 
-	public void convertUnknownColorCardToKnownManually(final String color, final ColorDeck deck) {
+	public void convertUnknownColorCardToKnownManually(final CardColor color, final ColorDeck deck) {
 		this.numUnknownColorCards--;
-		this.knownColorCards.put(color, this.knownColorCards.get(color) + 1);
+		this.knownColorCards[color.ordinal()]++;
 		deck.removeCardFromDeckPossibility(color);
 	}
 
+	/**
+	 * Turns unknown color cards into the given numbers of known cards of each color
+	 * (by ordinal), which the deck has already accounted for.
+	 */
+	void convertUnknownColorCardsToKnown(final int[] counts) {
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			this.knownColorCards[i] += counts[i];
+			this.numUnknownColorCards -= counts[i];
+		}
+	}
+
+	/**
+	 * Turns the given numbers of known cards of each color (by ordinal) back into
+	 * unknown cards, taking back {@link #convertUnknownColorCardsToKnown(int[])}
+	 * (the deck is left to the caller).
+	 */
+	void convertKnownColorCardsToUnknown(final int[] counts) {
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			this.knownColorCards[i] -= counts[i];
+			this.numUnknownColorCards += counts[i];
+		}
+	}
+
 	public void convertUnknownDestinationTicketToKnownManually(final DestinationTicket ticket,
 			final DestinationTicketDeck deck) {
 
@@ -82,6 +98,18 @@ public class Player {
 		deck.removeCardFromDeckPossiblility(ticket);
 	}
 
+	/**
+	 * Turns the most recently known destination ticket back into an unknown one,
+	 * taking back {@link #convertUnknownDestinationTicketToKnownManually} (the deck
+	 * is left to the caller).
+	 *
+	 * @return The ticket that is no longer known
+	 */
+	DestinationTicket convertLastKnownDestinationTicketToUnknown() {
+		this.numUnknownDestinationTickets++;
+		return this.knownDestinationTickets.remove(this.knownDestinationTickets.size() - 1);
+	}
+
 	public void setNumUnknownDestinationTickets(final int numTickets) {
 		this.numUnknownDestinationTickets = numTickets;
 	}
@@ -94,8 +122,15 @@ public class Player {
 		return this.numUnknownDestinationTickets;
 	}
 
-	public Map<String, Long> getKnownColorCards() {
-		return this.knownColorCards;
+	/**
+	 * @return A copy of the number of known cards of each color (by ordinal)
+	 */
+	public int[] getKnownColorCards() {
+		return this.knownColorCards.clone();
+	}
+
+	public int getNumKnownColorCards(final CardColor color) {
+		return this.knownColorCards[color.ordinal()];
 	}
 
 	public List<DestinationTicket> getKnownDestinationTickets() {
@@ -135,121 +170,156 @@ public class Player {
 		deck.discardKnownTicket(discardedTicket);
 	}
 
+	/**
+	 * Puts a discarded ticket back into this player's hand at the index it was
+	 * discarded from (the deck is left to the caller).
+	 */
+	void undoDiscardKnownTicketAtIndex(final int index, final DestinationTicket ticket) {
+		this.knownDestinationTickets.add(index, ticket);
+	}
+
 	public void drawUnknownColorCardFromDeck(final ColorDeck deck) {
 		this.numUnknownColorCards++;
 		deck.drawUnknownFromDeck();
 	}
 
-	public void drawFaceUp(final String color, final ColorDeck deck) {
-		this.knownColorCards.put(color, this.knownColorCards.get(color) + 1);
+	public void drawFaceUp(final CardColor color, final ColorDeck deck) {
+		this.knownColorCards[color.ordinal()]++;
 		deck.drawFaceUp(color);
 	}
 
+	/**
+	 * Gives back a face up card taken by {@link #drawFaceUp} (the deck is left to
+	 * the caller).
+	 */
+	void undoDrawFaceUp(final CardColor color) {
+		this.knownColorCards[color.ordinal()]--;
+	}
+
 	public boolean canAffordConnection(final Board.Connection connection) {
 		if (this.numCarsRemaining < connection.getLength()) {
 			return false;
 		}
 
-		if (!connection.getColor().equals("GRAY")) {
-			return this.knownColorCards.get(connection.getColor()) + this.knownColorCards.get("WILD") >= connection
-					.getLength();
+		final int numWilds = this.knownColorCards[CardColor.WILD.ordinal()];
+
+		if (!connection.isGray()) {
+			return this.knownColorCards[connection.getCardColor().ordinal()] + numWilds >= connection.getLength();
 		}
 
-		long maxGrayLength = 0;
-		for (final String color : this.knownColorCards.keySet()) {
-			if (!color.equals("WILD")) {
-				maxGrayLength = Math.max(maxGrayLength,
-						this.knownColorCards.get(color) + this.knownColorCards.get("WILD"));
+		int maxColor = 0;
+		for (int i = 0; i < CardColor.NUM_COLORS; i++) {
+			if (i != CardColor.WILD.ordinal()) {
+				maxColor = Math.max(maxColor, this.knownColorCards[i]);
 			}
 		}
 
-		return maxGrayLength >= connection.getLength();
+		return maxColor + numWilds >= connection.getLength();
 	}
 
-	public boolean canAffordGrayWithColor(final long length, final String color) {
+	public boolean canAffordGrayWithColor(final long length, final CardColor color) {
 		// technically it isn't a requirement to have at least one of the color if you
 		// have sufficient wilds
 		// this just stops it from investigating plays that are very likely to be bad
-		return this.numCarsRemaining >= length && this.knownColorCards.get(color) > 0
-				&& this.knownColorCards.get(color) + this.knownColorCards.get("WILD") >= length;
+		final int numColor = this.knownColorCards[color.ordinal()];
+
+		return this.numCarsRemaining >= length && numColor > 0
+				&& numColor + this.knownColorCards[CardColor.WILD.ordinal()] >= length;
 	}
 
-	public void buildConnection(final Board.Connection connection, final Board board, final ColorDeck deck,
+	/**
+	 * @return The number of cards of the connection's color that were paid (the
+	 *         rest were wilds)
+	 */
+	public int buildConnection(final Board.Connection connection, final Board board, final ColorDeck deck,
 			final int currentPlayer, final int numPlayers) {
 		// pay cars
 		this.numCarsRemaining -= connection.getLength();
 
 		// pay cards and send to discard pile
-		final long numColor = this.knownColorCards.get(connection.getColor());
-
-		if (connection.getLength() <= numColor) {
-			this.knownColorCards.put(connection.getColor(),
-					this.knownColorCards.get(connection.getColor()) - connection.getLength());
-
-			deck.sendKnownToDiscard(connection.getLength(), connection.getColor());
-		} else {
-			this.knownColorCards.put(connection.getColor(), 0L);
-			this.knownColorCards.put("WILD", this.knownColorCards.get("WILD") - (connection.getLength() - numColor));
-
-			deck.sendKnownToDiscard(numColor, connection.getColor());
-			deck.sendKnownToDiscard(connection.getLength() - numColor, "WILD");
-		}
+		final int numColorPaid = this.payCards(connection.getLength(), connection.getCardColor(), deck);
 
 		// add score
-		if (connection.getLength() == 1) {
-			this.score += 1;
-		} else if (connection.getLength() == 2) {
-			this.score += 2;
-		} else if (connection.getLength() == 3) {
-			this.score += 4;
-		} else if (connection.getLength() == 4) {
-			this.score += 7;
-		} else if (connection.getLength() == 5) {
-			this.score += 10;
-		} else
-			this.score += 15;
+		this.score += getPoints(connection.getLength());
 
 		// adjust board
 		board.giveOwnershipToPlayer(connection, currentPlayer, numPlayers);
+
+		return numColorPaid;
 	}
 
-	public void buildGrayConnectionWithColor(final Board.Connection connection, final Board board, final String color,
-			final ColorDeck deck, final int currentPlayer, final int numPlayers) {
+	/**
+	 * @return The number of cards of the given color that were paid (the rest were
+	 *         wilds)
+	 */
+	public int buildGrayConnectionWithColor(final Board.Connection connection, final Board board,
+			final CardColor color, final ColorDeck deck, final int currentPlayer, final int numPlayers) {
 		// pay cars
 		this.numCarsRemaining -= connection.getLength();
 
 		// pay cards and send to discard pile
-		final long numColor = this.knownColorCards.get(color);
+		final int numColorPaid = this.payCards(connection.getLength(), color, deck);
 
-		if (connection.getLength() <= numColor) {
-			this.knownColorCards.put(color, this.knownColorCards.get(color) - connection.getLength());
+		// add score
+		this.score += getPoints(connection.getLength());
 
-			deck.sendKnownToDiscard(connection.getLength(), color);
-		} else {
-			this.knownColorCards.put(color, 0L);
-			this.knownColorCards.put("WILD", this.knownColorCards.get("WILD") - (connection.getLength() - numColor));
+		// adjust board
+		board.giveOwnershipToPlayer(connection, currentPlayer, numPlayers);
 
-			deck.sendKnownToDiscard(numColor, color);
-			deck.sendKnownToDiscard(connection.getLength() - numColor, "WILD");
-		}
+		return numColorPaid;
+	}
 
-		// add score
-		if (connection.getLength() == 1) {
-			this.score += 1;
-		} else if (connection.getLength() == 2) {
-			this.score += 2;
-		} else if (connection.getLength() == 3) {
-			this.score += 4;
-		} else if (connection.getLength() == 4) {
-			this.score += 7;
-		} else if (connection.getLength() == 5) {
-			this.score += 10;
-		} else {
-			this.score += 15;
+	/**
+	 * Pays the given number of cards of the given color, using wilds for the ones
+	 * that are missing, and sends them to the discard pile.
+	 *
+	 * @return The number of cards of the given color that were paid
+	 */
+	private int payCards(final long length, final CardColor color, final ColorDeck deck) {
+		final int numColor = (int) Math.min(length, this.knownColorCards[color.ordinal()]);
+
+		this.knownColorCards[color.ordinal()] -= numColor;
+		this.knownColorCards[CardColor.WILD.ordinal()] -= (int) (length - numColor);
+
+		deck.sendKnownToDiscard(numColor, color);
+		deck.sendKnownToDiscard(length - numColor, CardColor.WILD);
+
+		return numColor;
+	}
+
+	/**
+	 * @return The points for building a connection of the given length
+	 */
+	private static int getPoints(final long length) {
+		if (length == 1) {
+			return 1;
+		} else if (length == 2) {
+			return 2;
+		} else if (length == 3) {
+			return 4;
+		} else if (length == 4) {
+			return 7;
+		} else if (length == 5) {
+			return 10;
 		}
 
-		// adjust board
-		board.giveOwnershipToPlayer(connection, currentPlayer, numPlayers);
+		return 15;
+	}
+
+	/**
+	 * Takes back the cars, cards and points of a connection built by
+	 * {@link #buildConnection} or {@link #buildGrayConnectionWithColor} (the deck
+	 * and the board are left to the caller).
+	 *
+	 * @param color        The color that was paid with
+	 * @param numColorPaid The number of cards of that color that were paid, as
+	 *                     returned by the build
+	 */
+	void undoBuildConnection(final Board.Connection connection, final CardColor color, final int numColorPaid) {
+		this.numCarsRemaining += connection.getLength();
+		this.knownColorCards[color.ordinal()] += numColorPaid;
+		this.knownColorCards[CardColor.WILD.ordinal()] += (int) (connection.getLength() - numColorPaid);
+		this.score -= getPoints(connection.getLength());
 	}
 
 	public void drawThreeTickets(final DestinationTicketDeck deck) {
@@ -257,49 +327,63 @@ public class Player {
 		deck.drawThreeUnknown();
 	}
 
-	public void buildHumanConnection(final Connection connection, final String colorPayed, final long wilds,
+	public void buildHumanConnection(final Connection connection, final CardColor colorPayed, final long wilds,
 			final ColorDeck colorDeck, final Board board, final int currentPlayer, final int numPlayers) {
 		// pay cars
 		this.numCarsRemaining -= connection.getLength();
 
 		// pay cards and send to discard (convert cards to known first)
 		final long numColorSpend = connection.getLength() - wilds;
-		final long numColorKnown = this.knownColorCards.get(colorPayed);
-		final long numWildsKnown = this.knownColorCards.get("WILD");
+		final long numColorKnown = this.knownColorCards[colorPayed.ordinal()];
+		final long numWildsKnown = this.knownColorCards[CardColor.WILD.ordinal()];
 
 		for (long i = numColorKnown; i < numColorSpend; i++) {
 			this.convertUnknownColorCardToKnownManually(colorPayed, colorDeck);
 		}
 
 		for (long i = numWildsKnown; i < wilds; i++) {
-			this.convertUnknownColorCardToKnownManually("WILD", colorDeck);
+			this.convertUnknownColorCardToKnownManually(CardColor.WILD, colorDeck);
 		}
 
-		this.knownColorCards.put(colorPayed, this.knownColorCards.get(colorPayed) - numColorSpend);
-		this.knownColorCards.put("WILD", this.knownColorCards.get("WILD") - wilds);
+		this.knownColorCards[colorPayed.ordinal()] -= (int) numColorSpend;
+		this.knownColorCards[CardColor.WILD.ordinal()] -= (int) wilds;
 
 		colorDeck.sendKnownToDiscard(numColorSpend, colorPayed);
-		colorDeck.sendKnownToDiscard(wilds, "WILD");
+		colorDeck.sendKnownToDiscard(wilds, CardColor.WILD);
 
 		// add score
-		if (connection.getLength() == 1) {
-			this.score += 1;
-		} else if (connection.getLength() == 2) {
-			this.score += 2;
-		} else if (connection.getLength() == 3) {
-			this.score += 4;
-		} else if (connection.getLength() == 4) {
-			this.score += 7;
-		} else if (connection.getLength() == 5) {
-			this.score += 10;
-		} else {
-			this.score += 15;
-		}
+		this.score += getPoints(connection.getLength());
 
 		// adjust board
 		board.giveOwnershipToPlayer(connection, currentPlayer, numPlayers);
 	}
 
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof Player)) {
+			return false;
+		}
+
+		final Player other = (Player) obj;
+		return this.numUnknownColorCards == other.numUnknownColorCards
+				&& this.numUnknownDestinationTickets == other.numUnknownDestinationTickets
+				&& this.numCarsRemaining == other.numCarsRemaining && this.score == other.score
+				&& this.numCompletedTickets == other.numCompletedTickets
+				&& this.longestRouteLength == other.longestRouteLength
+				&& Arrays.equals(this.knownColorCards, other.knownColorCards)
+				&& this.knownDestinationTickets.equals(other.knownDestinationTickets);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(Arrays.hashCode(this.knownColorCards), this.knownDestinationTickets, this.numUnknownColorCards,
+				this.numUnknownDestinationTickets, this.numCarsRemaining, this.score);
+	}
+
 	public boolean mayDrawTickets(final Board board, final int owner) {
 		for (final DestinationTicket ticket : this.knownDestinationTickets) {
 			if (!board.isCompleteTicket(ticket, owner)
@@ -0,0 +1,262 @@
+package state;
+
+import java.util.Arrays;
+
+/**
+ * Shortest paths over the city ids of a board, using Dijkstra's algorithm with
+ * an indexed binary heap. The scratch arrays are kept per thread and reused, so
+ * a query does not allocate. A distance of 1000 (the cost of a connection the
+ * player can never use) means that there is no usable path.
+ * 
+ * A point-to-point query stops as soon as the target is settled, so it only
+ * visits the cities closer than the target. The board uses it for the distances
+ * in connections, which are asked for once per ticket when guessing a player's
+ * tickets; the distances in trains are asked for far more often, so the board
+ * keeps those in a {@link PathDistances} cache instead, which works out the
+ * distances from a city to every city at once and keeps them current by
+ * pushing lower distances through them as connections are claimed.
+ * 
+ * The point-to-point query is not goal-directed. Landmark (ALT) bounds for A*
+ * have to count connections on the bare map, and the owner's connections cost
+ * nothing, so each bound loses one for every connection the owner has built.
+ * On a map the size of the base one, the bounds are that weak and that costly
+ * to work out that the plain search settles the target sooner.
+ */
+final class ShortestPaths {
+
+	static final int UNREACHABLE = 1000;
+
+	private static final ThreadLocal<ShortestPaths> SCRATCH = ThreadLocal.withInitial(ShortestPaths::new);
+
+	// a city has a valid dist (and pos) only if its stamp is the current one, which
+	// saves clearing the arrays before every query
+	private int[] dist;
+	private int[] stamp;
+	private int currentStamp;
+
+	// a binary heap of city ids ordered by dist, and the position of each city
+	// in it (-1 once the city has been settled)
+	private int[] heap;
+	private int[] pos;
+	private int heapSize;
+
+	private ShortestPaths() {
+		this.dist = new int[0];
+		this.stamp = new int[0];
+		this.currentStamp = 0;
+		this.heap = new int[0];
+		this.pos = new int[0];
+		this.heapSize = 0;
+	}
+
+	/**
+	 * @param owner       The player whose connections cost nothing
+	 * @param countTrains Whether an open connection costs its length (true) or 1
+	 *                    (false)
+	 * @return The distance between the two cities, or 1000 if the owner cannot
+	 *         join them
+	 */
+	static int getDistance(final Board board, final int start, final int end, final int owner,
+			final boolean countTrains) {
+		final ShortestPaths scratch = SCRATCH.get();
+		scratch.search(board, start, end, owner, countTrains);
+
+		return (scratch.stamp[end] == scratch.currentStamp) ? scratch.dist[end] : UNREACHABLE;
+	}
+
+	/**
+	 * Fills in the distance from the given city to every city, 1000 for the ones
+	 * the owner cannot reach.
+	 * 
+	 * @param owner       The player whose connections cost nothing
+	 * @param countTrains Whether an open connection costs its length (true) or 1
+	 *                    (false)
+	 */
+	static void getDistances(final Board board, final int start, final int owner, final boolean countTrains,
+			final int[] distances) {
+		final ShortestPaths scratch = SCRATCH.get();
+		scratch.search(board, start, -1, owner, countTrains);
+
+		for (int city = 0; city < distances.length; city++) {
+			distances[city] = (scratch.stamp[city] == scratch.currentStamp) ? scratch.dist[city] : UNREACHABLE;
+		}
+	}
+
+	/**
+	 * Lowers the distance to the given city, if the new one is better, and then
+	 * the distances to every city that can now be reached more cheaply through it.
+	 * The distances must otherwise be the shortest ones already.
+	 */
+	static void lowerDistances(final Board board, final int owner, final boolean countTrains, final int[] distances,
+			final int city, final int newDist) {
+		if (newDist < distances[city] && newDist < UNREACHABLE) {
+			SCRATCH.get().lower(board, owner, countTrains, distances, city, newDist);
+		}
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from the given city, stopping once the given end
+	 * is settled (or going on to every city if it is -1).
+	 */
+	private void search(final Board board, final int start, final int end, final int owner,
+			final boolean countTrains) {
+		final BoardTopology topology = board.getTopology();
+		topology.freeze();
+
+		this.reset(topology.getNumCities());
+
+		final int[] adjacencyOffsets = topology.getAdjacencyOffsets();
+		final int[] adjacentConnections = topology.getAdjacentConnections();
+		final int[] adjacentCities = topology.getAdjacentCities();
+
+		this.relax(start, 0);
+
+		while (this.heapSize > 0) {
+			final int current = this.pop();
+
+			// the distance of a settled city never changes
+			if (current == end) {
+				return;
+			}
+
+			for (int j = adjacencyOffsets[current]; j < adjacencyOffsets[current + 1]; j++) {
+				final int cost = board.getCost(adjacentConnections[j], owner, countTrains);
+
+				if (cost < UNREACHABLE) {
+					this.relax(adjacentCities[j], this.dist[current] + cost);
+				}
+			}
+		}
+	}
+
+	private void lower(final Board board, final int owner, final boolean countTrains, final int[] distances,
+			final int city, final int newDist) {
+		final BoardTopology topology = board.getTopology();
+		topology.freeze();
+
+		this.reset(topology.getNumCities());
+
+		final int[] adjacencyOffsets = topology.getAdjacencyOffsets();
+		final int[] adjacentConnections = topology.getAdjacentConnections();
+		final int[] adjacentCities = topology.getAdjacentCities();
+
+		// the same as the search above, except that only the cities whose distance
+		// goes down are visited, and the distances are kept in the given array
+		this.relax(city, newDist);
+		distances[city] = newDist;
+
+		while (this.heapSize > 0) {
+			final int current = this.pop();
+
+			for (int j = adjacencyOffsets[current]; j < adjacencyOffsets[current + 1]; j++) {
+				final int newOtherDist = distances[current] + board.getCost(adjacentConnections[j], owner, countTrains);
+				final int otherCity = adjacentCities[j];
+
+				if (newOtherDist < distances[otherCity] && newOtherDist < UNREACHABLE) {
+					this.relax(otherCity, newOtherDist);
+					distances[otherCity] = newOtherDist;
+				}
+			}
+		}
+	}
+
+	private void reset(final int numCities) {
+		if (this.dist.length < numCities) {
+			this.dist = new int[numCities];
+			this.stamp = new int[numCities];
+			this.heap = new int[numCities];
+			this.pos = new int[numCities];
+			this.currentStamp = 0;
+		}
+
+		// start a new stamp, clearing the old ones once in a long while when it wraps
+		this.currentStamp++;
+		if (this.currentStamp == Integer.MAX_VALUE) {
+			Arrays.fill(this.stamp, 0);
+			this.currentStamp = 1;
+		}
+
+		this.heapSize = 0;
+	}
+
+	/**
+	 * Lowers the distance of the given city if the new one is better, adding it to
+	 * the heap or moving it up as needed.
+	 */
+	private void relax(final int city, final int newDist) {
+		if (newDist >= UNREACHABLE) {
+			return;
+		}
+
+		if (this.stamp[city] != this.currentStamp) {
+			this.stamp[city] = this.currentStamp;
+			this.dist[city] = newDist;
+			this.pos[city] = this.heapSize;
+			this.heap[this.heapSize++] = city;
+			this.siftUp(this.pos[city]);
+		} else if (newDist < this.dist[city]) {
+			// a settled city never gets a lower distance, as no connection costs less
+			// than nothing
+			this.dist[city] = newDist;
+			this.siftUp(this.pos[city]);
+		}
+	}
+
+	private int pop() {
+		final int city = this.heap[0];
+		this.pos[city] = -1;
+
+		this.heapSize--;
+		if (this.heapSize > 0) {
+			this.heap[0] = this.heap[this.heapSize];
+			this.pos[this.heap[0]] = 0;
+			this.siftDown(0);
+		}
+
+		return city;
+	}
+
+	private void siftUp(int index) {
+		final int city = this.heap[index];
+
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+			if (this.dist[this.heap[parent]] <= this.dist[city]) {
+				break;
+			}
+
+			this.heap[index] = this.heap[parent];
+			this.pos[this.heap[index]] = index;
+			index = parent;
+		}
+
+		this.heap[index] = city;
+		this.pos[city] = index;
+	}
+
+	private void siftDown(int index) {
+		final int city = this.heap[index];
+
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= this.heapSize) {
+				break;
+			}
+
+			if (child + 1 < this.heapSize && this.dist[this.heap[child + 1]] < this.dist[this.heap[child]]) {
+				child++;
+			}
+
+			if (this.dist[this.heap[child]] >= this.dist[city]) {
+				break;
+			}
+
+			this.heap[index] = this.heap[child];
+			this.pos[this.heap[index]] = index;
+			index = child;
+		}
+
+		this.heap[index] = city;
+		this.pos[city] = index;
+	}
+}
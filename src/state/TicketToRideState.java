@@ -1,17 +1,21 @@
 package state;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 import data.DestinationTicket;
-import mcts.api.GameState;
+import mcts.api.MoveGameState;
+import scoring.FinalScores;
 import scoring.Scoring;
 import state.Board.Connection;
 
-public class TicketToRideState implements GameState {
+public class TicketToRideState implements MoveGameState {
 
 	private final Player[] players;
 	private final ColorDeck colorDeck;
@@ -28,11 +32,25 @@ public class TicketToRideState implements GameState {
 	private boolean haveAlreadyDrawnTickets;
 	private int aiPlayerIndex;
 
-	// this is a hack that makes up for the fact that MCTS algorithm computes score
-	// twice
-	// normally not a big deal, but this scoring system mutates the Player
-	// references, so now it's a big deal
-	private boolean alreadyComputedScore;
+	// everything needed to undo the moves applied so far (never copied)
+	private final List<UndoFrame> undoFrames;
+	private int numUndoFrames;
+
+	// reused every time a random move is made (never copied)
+	private final MoveCollector moveCollector;
+
+	// the connections worth building and colors worth drawing for the current
+	// player, worked out when first needed and kept until the board, the tickets,
+	// the cars or the current player change (null and -1 until then) - the set is
+	// unmodifiable, so a thread that sees it sees all of it
+	private Set<Board.Connection> reasonableConnections;
+	private int reasonableColors;
+
+	// the end of game scoring and the winners, worked out the first time they are
+	// asked for once the game is over and kept until the state changes (null until
+	// then) - neither is ever changed once made, so they can also be shared
+	private FinalScores finalScores;
+	private List<Integer> winningPlayers;
 
 	public TicketToRideState(final int numPlayers, final int aiPlayerIndex, final long numCarsPerPlayer,
 			final ColorDeck colorDeck, final DestinationTicketDeck destinationTicketDeck, final Board board,
@@ -60,7 +78,13 @@ public class TicketToRideState implements GameState {
 		this.haveInitialTicketsBeenChosen = false;
 		this.haveAlreadyTakenColorCard = false;
 		this.haveAlreadyDrawnTickets = false;
-		this.alreadyComputedScore = false;
+		this.undoFrames = new ArrayList<>();
+		this.numUndoFrames = 0;
+		this.moveCollector = new MoveCollector();
+		this.reasonableConnections = null;
+		this.reasonableColors = -1;
+		this.finalScores = null;
+		this.winningPlayers = null;
 	}
 
 	public TicketToRideState(final TicketToRideState state) {
@@ -81,7 +105,15 @@ public class TicketToRideState implements GameState {
 		this.haveInitialTicketsBeenChosen = state.haveInitialTicketsBeenChosen;
 		this.haveAlreadyTakenColorCard = state.haveAlreadyTakenColorCard;
 		this.haveAlreadyDrawnTickets = state.haveAlreadyDrawnTickets;
-		this.alreadyComputedScore = state.alreadyComputedScore;
+		this.undoFrames = new ArrayList<>();
+		this.numUndoFrames = 0;
+		this.moveCollector = new MoveCollector();
+
+		// the set is never changed once made, so it can be shared
+		this.reasonableConnections = state.reasonableConnections;
+		this.reasonableColors = state.reasonableColors;
+		this.finalScores = state.finalScores;
+		this.winningPlayers = state.winningPlayers;
 	}
 
 	public void dealStartingHands(final int aiPlayerIndex, final Scanner in) {
@@ -97,6 +129,7 @@ public class TicketToRideState implements GameState {
 		}
 
 		this.resolveUnknownsForPlayerManually(aiPlayerIndex, in);
+		this.clearCaches();
 	}
 
 	public void resolveUnknownsForPlayerManually(final int playerIndex, final Scanner in) {
@@ -106,7 +139,7 @@ public class TicketToRideState implements GameState {
 		final int numUnknownColorCards = player.getNumUnknownColorCards();
 		for (int i = 1; i <= numUnknownColorCards; i++) {
 			System.out.print("Drawn color card " + i + ": ");
-			final String color = in.next().toUpperCase();
+			final CardColor color = CardColor.valueOf(in.next().toUpperCase());
 			in.nextLine(); // consume new line
 
 			player.convertUnknownColorCardToKnownManually(color, this.colorDeck);
@@ -124,6 +157,8 @@ public class TicketToRideState implements GameState {
 
 			player.convertUnknownDestinationTicketToKnownManually(ticket, this.destinationTicketDeck);
 		}
+
+		this.clearCaches();
 	}
 
 	public void printPlayerInfo(final int playerIndex) {
@@ -132,10 +167,10 @@ public class TicketToRideState implements GameState {
 		System.out.println();
 		System.out.println("Player " + playerIndex + ":");
 		System.out.println("Cars remaining: " + player.getNumCarsRemaining());
-		System.out.println("Known color cards = " + player.getKnownColorCards());
+		System.out.println("Known color cards = " + CardColor.format(player.getKnownColorCards()));
 		System.out.println("Unknown color cards = " + player.getNumUnknownColorCards());
-		System.out.println("Face up color cards = " + this.colorDeck.getFaceUp());
-		System.out.println("Discard pile = " + this.colorDeck.getDiscard());
+		System.out.println("Face up color cards = " + CardColor.format(this.colorDeck.getFaceUp()));
+		System.out.println("Discard pile = " + CardColor.format(this.colorDeck.getDiscard()));
 
 		System.out.println();
 		final List<DestinationTicket> tickets = player.getKnownDestinationTickets();
@@ -172,6 +207,8 @@ public class TicketToRideState implements GameState {
 				this.destinationTicketDeck.addDiscards(3 - numTicketsKept);
 			}
 		}
+
+		this.clearCaches();
 	}
 
 	public void drawAndKeepDestinationTicketsForCurrentHuman(final int numKept) {
@@ -185,6 +222,7 @@ public class TicketToRideState implements GameState {
 		this.lastPlayerIndex = this.currentPlayerIndex;
 		this.currentPlayerIndex = this.getNextPlayer();
 		this.isGameOver = player.getNumCarsRemaining() < 3;
+		this.clearCaches();
 	}
 
 	public int getCurrentPlayer() {
@@ -208,603 +246,593 @@ public class TicketToRideState implements GameState {
 		return this.lastPlayerIndex;
 	}
 
+	// moves are encoded as ints: the type of move is kept in the upper bits, and
+	// the details of the move (connection, color, tickets) in the lower bits
+	private static final int MOVE_TYPE_MASK = 0xF << 24;
+	private static final int CONNECTION_SHIFT = 8;
+	private static final int CONNECTION_MASK = 0xFFFF;
+	private static final int DETAIL_MASK = 0xFF;
+	private static final int DISCARD_MASK = 0b111;
+
+	private static final int END_GAME = 1 << 24;
+	private static final int PASS = 2 << 24;
+	private static final int DRAW_TOP = 3 << 24; // detail unused
+	private static final int DRAW_FACE_UP = 4 << 24; // detail = ordinal of the color
+	private static final int DRAW_TICKETS = 5 << 24; // detail unused
+	private static final int KEEP_TICKETS = 6 << 24; // detail = which of the last 3 tickets to discard
+	private static final int BUILD = 7 << 24; // connection index, detail = ordinal of the color paid
+
+	// masks of the last 3 tickets (bit 0 = left, bit 1 = middle, bit 2 = right) to
+	// discard for each combination that may be kept
+	private static final int[] INITIAL_TICKET_DISCARDS = { 0b001, 0b010, 0b100, 0b000 };
+	private static final int[] DRAWN_TICKET_DISCARDS = { 0b110, 0b101, 0b011, 0b100, 0b010, 0b001, 0b000 };
+
+	private static final CardColor[] CARD_COLORS = CardColor.values();
+	private static final int ALL_COLORS = (1 << CardColor.NUM_COLORS) - 1;
+
 	@Override
-	public List<GameState> getNextStates() {
-		final List<GameState> nextStates = new ArrayList<>();
+	public int getMaxNumMoves() {
+		// at most one build per color for every connection, plus the card and ticket
+		// draws
+		return 16 + this.board.getNumConnections() * CardColor.NUM_COLORS;
+	}
 
+	@Override
+	public int getLegalMoves(final int[] moves) {
 		// cannot expand this node if the game is over
 		if (this.isGameOver) {
-			return nextStates;
+			return 0;
 		}
 
 		// cannot expand this node if the current player is not the AI (due to
 		// incomplete information)
 		if (this.players[this.currentPlayerIndex].getNumUnknownDestinationTickets() > 0) {
-			return nextStates;
+			return 0;
 		}
 
 		// this method assumes that all of the AI's unknown information has been filled
-		// already
+		// already - it only reads this state, so it gets a collector of its own
+		final MoveCollector collector = new MoveCollector();
+		collector.collectInto(moves);
+		this.generateMoves(collector);
 
-		// if initial tickets have not been chosen yet, the only choice is to pick a
-		// combination of 2 or 3 tickets
-		if (!this.haveInitialTicketsBeenChosen) {
-			final TicketToRideState copy1 = new TicketToRideState(this);
-			final TicketToRideState copy2 = new TicketToRideState(this);
-			final TicketToRideState copy3 = new TicketToRideState(this);
-			final TicketToRideState copy4 = new TicketToRideState(this);
+		return collector.size();
+	}
 
-			copy1.players[copy1.currentPlayerIndex].discardKnownTicketAtIndex(0, copy1.destinationTicketDeck);
-			copy2.players[copy2.currentPlayerIndex].discardKnownTicketAtIndex(1, copy2.destinationTicketDeck);
-			copy3.players[copy3.currentPlayerIndex].discardKnownTicketAtIndex(2, copy3.destinationTicketDeck);
+	@Override
+	public void apply(final int move) {
+		final UndoFrame frame = this.pushUndoFrame(move, false);
+		this.makeMove(move, frame);
+	}
+
+	@Override
+	public int applyRandomMove(final SplittableRandom random) {
+		// remember that it is guaranteed that the game has not ended
+
+		// the move is not known yet, so the frame is ready for any of them
+		final UndoFrame frame = this.pushUndoFrame(0, true);
 
-			copy1.lastPlayerIndex = copy1.currentPlayerIndex;
-			copy1.currentPlayerIndex = 0;
-			copy1.haveInitialTicketsBeenChosen = true;
+		// randomly fill in all unknown color cards
+		// try to make some smart guesses about human destination tickets
+		// (the frame keeps what each player was given, so that it can be taken back)
+		for (int i = 0; i < this.players.length; i++) {
+			final Player player = this.players[i];
+			final int numUnknownDestinationTickets = player.getNumUnknownDestinationTickets();
+			if (numUnknownDestinationTickets > 0) {
+				this.clearCaches();
+			}
 
-			copy2.lastPlayerIndex = copy2.currentPlayerIndex;
-			copy2.currentPlayerIndex = 0;
-			copy2.haveInitialTicketsBeenChosen = true;
+			this.colorDeck.fillUnknownsRandomlyForPlayer(player, random, frame.filledColorCards[i]);
+			this.destinationTicketDeck.fillUnknownsForPlayerSmartly(player, this.board, i, random);
+			frame.numFilledDestinationTickets[i] = numUnknownDestinationTickets
+					- player.getNumUnknownDestinationTickets();
+		}
 
-			copy3.lastPlayerIndex = copy3.currentPlayerIndex;
-			copy3.currentPlayerIndex = 0;
-			copy3.haveInitialTicketsBeenChosen = true;
+		// replenish the face up with a random card if needed and possible
+		this.colorDeck.replenishFaceUpRandomly(random);
 
-			copy4.lastPlayerIndex = copy4.currentPlayerIndex;
-			copy4.currentPlayerIndex = 0;
-			copy4.haveInitialTicketsBeenChosen = true;
+		// pick one of the possible moves at random, without storing the others
+		this.moveCollector.sample(random);
+		this.generateMoves(this.moveCollector);
+		final int move = this.moveCollector.getSampledMove();
 
-			nextStates.add(copy1);
-			nextStates.add(copy2);
-			nextStates.add(copy3);
-			nextStates.add(copy4);
+		frame.move = move;
+		this.makeMove(move, frame);
 
-			return nextStates;
+		return move;
+	}
+
+	@Override
+	public void undo(final int move) throws IllegalStateException {
+		if (this.numUndoFrames == 0 || this.undoFrames.get(this.numUndoFrames - 1).move != move) {
+			throw new IllegalStateException("Tried to undo a move that was not the last one made!");
 		}
-		// if this is a second turn of a color-drawing turn, create a state for each
-		// possible card to take (no face up wild allowed)
-		else if (this.haveAlreadyTakenColorCard) {
 
-			if (this.colorDeck.canDrawFromTop()) {
-				final TicketToRideState takeFromDrawPileCopy = new TicketToRideState(this);
-				takeFromDrawPileCopy.players[takeFromDrawPileCopy.currentPlayerIndex]
-						.drawUnknownColorCardFromDeck(takeFromDrawPileCopy.colorDeck);
-				nextStates.add(takeFromDrawPileCopy);
+		final UndoFrame frame = this.undoFrames.get(--this.numUndoFrames);
+		final Player player = this.players[frame.currentPlayerIndex];
+
+		// every change is taken back in the reverse order it was made - the changes to
+		// a deck that the frame saved are taken back all at once at the end
+		switch (move & MOVE_TYPE_MASK) {
+		case DRAW_TOP:
+			player.addUnknownColorCards(-1);
+
+			if (!frame.isColorDeckSaved) {
+				this.colorDeck.undoDrawUnknownFromDeck();
 			}
+			break;
+		case DRAW_FACE_UP:
+			final CardColor color = CardColor.get(move & DETAIL_MASK);
+			player.undoDrawFaceUp(color);
 
-			// don't take a face up unless it helps with our tickets
-			final Set<Board.Connection> possibleConnectionsForPlayer = this.board.getReasonableConnectionsForOwner(
-					this.players[this.currentPlayerIndex], this.currentPlayerIndex, this.players[this.aiPlayerIndex],
-					this.aiPlayerIndex);
+			if (!frame.isColorDeckSaved) {
+				this.colorDeck.undoDrawFaceUp(color);
+			}
+			break;
+		case DRAW_TICKETS:
+			player.addUnknownDestinationTickets(-3);
 
-			final Set<String> reasonableColors = new HashSet<>();
-			for (final Board.Connection connection : possibleConnectionsForPlayer) {
-				reasonableColors.add(connection.getColor());
+			if (!frame.isDestinationTicketDeckSaved) {
+				this.destinationTicketDeck.undoDrawThreeUnknown();
 			}
+			break;
+		case KEEP_TICKETS:
+			// put the tickets back from the left, so that each goes back where it was
+			final int numTickets = player.getNumKnownDestinationTickets() + Integer.bitCount(move & DISCARD_MASK);
+			for (int i = 0; i < 3; i++) {
+				if ((move & (1 << i)) != 0) {
+					player.undoDiscardKnownTicketAtIndex(numTickets - 3 + i, frame.discardedTickets[i]);
+
+					if (!frame.isDestinationTicketDeckSaved) {
+						this.destinationTicketDeck.undoDiscardKnownTicket(frame.discardedTickets[i]);
+					}
+				}
+			}
+			break;
+		case BUILD:
+			final Connection connection = this.board.getConnection((move >> CONNECTION_SHIFT) & CONNECTION_MASK);
+			final CardColor paidColor = connection.isGray() ? CardColor.get(move & DETAIL_MASK)
+					: connection.getCardColor();
+
+			this.board.takeOwnershipFromPlayer(connection, frame.currentPlayerIndex, this.players.length);
+			player.undoBuildConnection(connection, paidColor, frame.numColorPaid);
+
+			if (!frame.isColorDeckSaved) {
+				this.colorDeck.takeBackFromDiscard(frame.numColorPaid, paidColor);
+				this.colorDeck.takeBackFromDiscard(connection.getLength() - frame.numColorPaid, CardColor.WILD);
+			}
+			break;
+		default:
+			// passing and ending the game only change the flags
+			break;
+		}
+
+		// then whatever a random move filled in before it was made
+		for (int i = frame.isRandom ? this.players.length - 1 : -1; i >= 0; i--) {
+			for (int j = 0; j < frame.numFilledDestinationTickets[i]; j++) {
+				final DestinationTicket ticket = this.players[i].convertLastKnownDestinationTicketToUnknown();
 
-			for (final String color : this.colorDeck.getFaceUp().keySet()) {
-				if (!color.equals("WILD") && this.colorDeck.getFaceUp().get(color) > 0
-						&& (reasonableColors.contains("GRAY") || reasonableColors.contains(color))) {
-					final TicketToRideState state = new TicketToRideState(this);
-					state.players[state.currentPlayerIndex].drawFaceUp(color, state.colorDeck);
-					nextStates.add(state);
+				if (!frame.isDestinationTicketDeckSaved) {
+					this.destinationTicketDeck.returnCardToDeckPossibility(ticket);
 				}
 			}
 
-			for (final GameState state : nextStates) {
-				final TicketToRideState ticketToRideState = (TicketToRideState) state;
+			this.players[i].convertKnownColorCardsToUnknown(frame.filledColorCards[i]);
 
-				ticketToRideState.haveAlreadyTakenColorCard = false;
-				ticketToRideState.lastPlayerIndex = ticketToRideState.currentPlayerIndex;
-				ticketToRideState.currentPlayerIndex = ticketToRideState.getNextPlayer();
+			if (!frame.isColorDeckSaved) {
+				this.colorDeck.undoFillUnknowns(frame.filledColorCards[i]);
+			}
+		}
 
-				// if we are at less than 3 trains, then we must have been the one to get there
-				// first, so the game is over
-				if (this.players[this.currentPlayerIndex].getNumCarsRemaining() < 3) {
-					ticketToRideState.isGameOver = true;
-				}
+		if (frame.isColorDeckSaved) {
+			this.colorDeck.copyFrom(frame.savedColorDeck);
+		}
+
+		if (frame.isDestinationTicketDeckSaved) {
+			this.destinationTicketDeck.copyFrom(frame.savedDestinationTicketDeck);
+		}
+
+		this.lastPlayerIndex = frame.lastPlayerIndex;
+		this.currentPlayerIndex = frame.currentPlayerIndex;
+		this.isGameOver = frame.isGameOver;
+		this.haveInitialTicketsBeenChosen = frame.haveInitialTicketsBeenChosen;
+		this.haveAlreadyTakenColorCard = frame.haveAlreadyTakenColorCard;
+		this.haveAlreadyDrawnTickets = frame.haveAlreadyDrawnTickets;
+		this.reasonableConnections = frame.reasonableConnections;
+		this.reasonableColors = frame.reasonableColors;
+
+		// a state can only be over after its last move
+		this.finalScores = null;
+		this.winningPlayers = null;
+	}
+
+	/**
+	 * Passes every move that the current player may make to the given collector.
+	 * 
+	 * @param moves The collector to pass the moves to
+	 */
+	private void generateMoves(final MoveCollector moves) {
+		final Player player = this.players[this.currentPlayerIndex];
+
+		// if initial tickets have not been chosen yet, the only choice is to pick a
+		// combination of 2 or 3 tickets
+		if (!this.haveInitialTicketsBeenChosen) {
+			for (final int discards : INITIAL_TICKET_DISCARDS) {
+				moves.add(KEEP_TICKETS | discards);
 			}
 
-			// if we can't do anything, just go to the next player
-			if (nextStates.isEmpty()) {
-				final TicketToRideState copy = new TicketToRideState(this);
-				copy.haveAlreadyTakenColorCard = false;
-				copy.lastPlayerIndex = copy.currentPlayerIndex;
-				copy.currentPlayerIndex = copy.getNextPlayer();
-
-				// if we are at less than 3 trains, then we must have been the one to get there
-				// first, so the game is over
-				if (this.players[this.currentPlayerIndex].getNumCarsRemaining() < 3) {
-					copy.isGameOver = true;
+			return;
+		}
+		// if this is a second turn of a color-drawing turn, make a move for each
+		// possible card to take (no face up wild allowed)
+		else if (this.haveAlreadyTakenColorCard) {
+			if (this.colorDeck.canDrawFromTop()) {
+				moves.add(DRAW_TOP);
+			}
+
+			// don't take a face up unless it helps with our tickets
+			final int reasonableColors = this.getReasonableColors();
+
+			for (final CardColor color : CARD_COLORS) {
+				if (color != CardColor.WILD && this.colorDeck.getNumFaceUp(color) > 0
+						&& (reasonableColors & (1 << color.ordinal())) != 0) {
+					moves.add(DRAW_FACE_UP | color.ordinal());
 				}
+			}
 
-				nextStates.add(copy);
+			// if we can't do anything, just go to the next player
+			if (moves.size() == 0) {
+				moves.add(PASS);
 			}
 
-			return nextStates;
+			return;
 		}
-		// if this is a second turn of a ticket-drawing turn, create a state for each
+		// if this is a second turn of a ticket-drawing turn, make a move for each
 		// possible combination of tickets to take
 		else if (this.haveAlreadyDrawnTickets) {
-			final TicketToRideState copy1 = new TicketToRideState(this);
-			final TicketToRideState copy2 = new TicketToRideState(this);
-			final TicketToRideState copy3 = new TicketToRideState(this);
-			final TicketToRideState copy4 = new TicketToRideState(this);
-			final TicketToRideState copy5 = new TicketToRideState(this);
-			final TicketToRideState copy6 = new TicketToRideState(this);
-			final TicketToRideState copy7 = new TicketToRideState(this);
-
-			// keep left
-			final Player copy1Player = copy1.players[copy1.currentPlayerIndex];
-			copy1Player.discardKnownTicketAtIndex(copy1Player.getNumKnownDestinationTickets() - 1,
-					copy1.destinationTicketDeck);
-			copy1Player.discardKnownTicketAtIndex(copy1Player.getNumKnownDestinationTickets() - 1,
-					copy1.destinationTicketDeck);
-
-			// keep middle
-			final Player copy2Player = copy2.players[copy2.currentPlayerIndex];
-			copy2Player.discardKnownTicketAtIndex(copy2Player.getNumKnownDestinationTickets() - 1,
-					copy2.destinationTicketDeck);
-			copy2Player.discardKnownTicketAtIndex(copy2Player.getNumKnownDestinationTickets() - 2,
-					copy2.destinationTicketDeck);
-
-			// keep right
-			final Player copy3Player = copy3.players[copy3.currentPlayerIndex];
-			copy3Player.discardKnownTicketAtIndex(copy3Player.getNumKnownDestinationTickets() - 2,
-					copy3.destinationTicketDeck);
-			copy3Player.discardKnownTicketAtIndex(copy3Player.getNumKnownDestinationTickets() - 2,
-					copy3.destinationTicketDeck);
-
-			// keep left and middle
-			final Player copy4Player = copy4.players[copy4.currentPlayerIndex];
-			copy4Player.discardKnownTicketAtIndex(copy4Player.getNumKnownDestinationTickets() - 1,
-					copy4.destinationTicketDeck);
-
-			// keep left and right
-			final Player copy5Player = copy5.players[copy5.currentPlayerIndex];
-			copy5Player.discardKnownTicketAtIndex(copy5Player.getNumKnownDestinationTickets() - 2,
-					copy5.destinationTicketDeck);
-
-			// keep middle and right
-			final Player copy6Player = copy6.players[copy6.currentPlayerIndex];
-			copy6Player.discardKnownTicketAtIndex(copy6Player.getNumKnownDestinationTickets() - 3,
-					copy6.destinationTicketDeck);
-
-			nextStates.add(copy1);
-			nextStates.add(copy2);
-			nextStates.add(copy3);
-			nextStates.add(copy4);
-			nextStates.add(copy5);
-			nextStates.add(copy6);
-			nextStates.add(copy7);
-
-			for (final GameState state : nextStates) {
-				final TicketToRideState ticketToRideState = (TicketToRideState) state;
-
-				ticketToRideState.haveAlreadyDrawnTickets = false;
-				ticketToRideState.lastPlayerIndex = ticketToRideState.currentPlayerIndex;
-				ticketToRideState.currentPlayerIndex = ticketToRideState.getNextPlayer();
-
-				// if we are at less than 3 trains, then we must have been the one to get there
-				// first, so the game is over
-				if (this.players[this.currentPlayerIndex].getNumCarsRemaining() < 3) {
-					ticketToRideState.isGameOver = true;
-				}
+			for (final int discards : DRAWN_TICKET_DISCARDS) {
+				moves.add(KEEP_TICKETS | discards);
 			}
 
-			return nextStates;
+			return;
 		}
 
-		// if this is a first turn, make a state for each possible train placement, each
+		// if this is a first turn, make a move for each possible train placement, each
 		// possible color card, and drawing tickets
 
 		// tickets (only allowed if all tickets are either completed OR not able to be
 		// completed)
 		// if this is a reasonable action, always take it
-		if (this.players[this.currentPlayerIndex].mayDrawTickets(this.board, this.currentPlayerIndex)
+		if (player.mayDrawTickets(this.board, this.currentPlayerIndex)
 				&& this.destinationTicketDeck.canDrawThreeTickets()) {
-			final TicketToRideState copy = new TicketToRideState(this);
-			copy.players[copy.currentPlayerIndex].drawThreeTickets(copy.destinationTicketDeck);
-			copy.haveAlreadyDrawnTickets = true;
-			copy.lastPlayerIndex = copy.currentPlayerIndex;
-			nextStates.add(copy);
-
-			if (this.players[this.currentPlayerIndex].getNumCarsRemaining() > 6) {
-				return nextStates;
+			moves.add(DRAW_TICKETS);
+
+			if (player.getNumCarsRemaining() > 6) {
+				return;
 			}
 		}
 
 		// train placements
-		final Set<Board.Connection> possibleConnectionsForPlayer = this.board.getReasonableConnectionsForOwner(
-				this.players[this.currentPlayerIndex], this.currentPlayerIndex, this.players[this.aiPlayerIndex],
-				this.aiPlayerIndex);
-
-		final boolean isLastTurn = this.players[this.currentPlayerIndex].getNumCarsRemaining() < 3;
+		final Set<Board.Connection> possibleConnectionsForPlayer = this.getReasonableConnections();
 
 		for (final Board.Connection connection : possibleConnectionsForPlayer) {
-			if (this.players[this.currentPlayerIndex].canAffordConnection(connection)) {
-
-				if (!connection.getColor().equals("GRAY")) {
-					final TicketToRideState copy = new TicketToRideState(this);
-					copy.players[copy.currentPlayerIndex].buildConnection(copy.board.getMatchingConnection(connection),
-							copy.board, copy.colorDeck, copy.currentPlayerIndex, copy.players.length);
-					copy.lastPlayerIndex = copy.currentPlayerIndex;
-					copy.currentPlayerIndex = copy.getNextPlayer();
-					copy.isGameOver = isLastTurn;
-					nextStates.add(copy);
+			if (player.canAffordConnection(connection)) {
+				final int buildMove = BUILD | (connection.getIndex() << CONNECTION_SHIFT);
+
+				if (!connection.isGray()) {
+					moves.add(buildMove);
 				} else {
-					for (final String color : ColorDeck.COLORS) {
-						if (!color.equals("WILD")) {
-							if (this.players[this.currentPlayerIndex].canAffordGrayWithColor(connection.getLength(),
-									color)) {
-								final TicketToRideState copy = new TicketToRideState(this);
-								copy.players[copy.currentPlayerIndex].buildGrayConnectionWithColor(
-										copy.board.getMatchingConnection(connection), copy.board, color, copy.colorDeck,
-										copy.currentPlayerIndex, copy.players.length);
-								copy.lastPlayerIndex = copy.currentPlayerIndex;
-								copy.currentPlayerIndex = copy.getNextPlayer();
-								copy.isGameOver = isLastTurn;
-								nextStates.add(copy);
-							}
+					for (final CardColor color : CARD_COLORS) {
+						if (color != CardColor.WILD && player.canAffordGrayWithColor(connection.getLength(), color)) {
+							moves.add(buildMove | color.ordinal());
 						}
 					}
 				}
-
 			}
 		}
 
 		// color card choices
 		if (this.colorDeck.canDrawFromTop()) {
-			final TicketToRideState takeFromDrawPileCopy = new TicketToRideState(this);
-			takeFromDrawPileCopy.players[takeFromDrawPileCopy.currentPlayerIndex]
-					.drawUnknownColorCardFromDeck(takeFromDrawPileCopy.colorDeck);
-			takeFromDrawPileCopy.haveAlreadyTakenColorCard = true;
-			takeFromDrawPileCopy.lastPlayerIndex = takeFromDrawPileCopy.currentPlayerIndex;
-			nextStates.add(takeFromDrawPileCopy);
+			moves.add(DRAW_TOP);
 		}
 
 		// don't take a face up unless it helps with our tickets
-		final Set<String> reasonableColors = new HashSet<>();
-		for (final Board.Connection connection : possibleConnectionsForPlayer) {
-			reasonableColors.add(connection.getColor());
-		}
-
-		for (final String color : this.colorDeck.getFaceUp().keySet()) {
-			if (this.colorDeck.getFaceUp().get(color) > 0 && (color.equals("WILD") || reasonableColors.contains(color)
-					|| reasonableColors.contains("GRAY"))) {
-				final TicketToRideState state = new TicketToRideState(this);
-				state.players[state.currentPlayerIndex].drawFaceUp(color, state.colorDeck);
+		final int reasonableColors = this.getReasonableColors();
 
-				if (color.equals("WILD")) {
-					state.isGameOver = state.players[state.currentPlayerIndex].getNumCarsRemaining() < 3;
-					state.lastPlayerIndex = state.currentPlayerIndex;
-					state.currentPlayerIndex = state.getNextPlayer();
-				} else {
-					state.haveAlreadyTakenColorCard = true;
-					state.lastPlayerIndex = state.currentPlayerIndex;
-				}
-				nextStates.add(state);
+		for (final CardColor color : CARD_COLORS) {
+			if (this.colorDeck.getNumFaceUp(color) > 0
+					&& (color == CardColor.WILD || (reasonableColors & (1 << color.ordinal())) != 0)) {
+				moves.add(DRAW_FACE_UP | color.ordinal());
 			}
 		}
 
-		// if next states is somehow still empty, just end the game since there are no
+		// if there are somehow still no moves, just end the game since there are no
 		// legal moves
-		if (nextStates.isEmpty()) {
-			final TicketToRideState copy = new TicketToRideState(this);
-			copy.isGameOver = true;
-			nextStates.add(copy);
+		if (moves.size() == 0) {
+			moves.add(END_GAME);
 		}
-
-		return nextStates;
 	}
 
-	@Override
-	public GameState getRandomNextState() {
-		// remember that it is guaranteed that the game has not ended
-		// it is also guaranteed that initial tickets have been chosen already
+	private Set<Board.Connection> getReasonableConnections() {
+		if (this.reasonableConnections == null) {
+			this.reasonableConnections = Collections.unmodifiableSet(this.board.getReasonableConnectionsForOwner(
+					this.players[this.currentPlayerIndex], this.currentPlayerIndex, this.players[this.aiPlayerIndex],
+					this.aiPlayerIndex));
+		}
 
-		// make a copy of the current state to spawn new states off of
-		final TicketToRideState temp = new TicketToRideState(this);
+		return this.reasonableConnections;
+	}
 
-		// randomly fill in all unknown color cards
-		// try to make some smart guesses about human destination tickets
-		for (int i = 0; i < temp.players.length; i++) {
-			final Player player = temp.players[i];
-			temp.colorDeck.fillUnknownsRandomlyForPlayer(player);
-			temp.destinationTicketDeck.fillUnknownsForPlayerSmartly(player, temp.board, i);
+	/**
+	 * @return The colors of the reasonable connections, as a mask with the bit of
+	 *         each color's ordinal set (a gray connection sets every bit)
+	 */
+	private int getReasonableColors() {
+		if (this.reasonableColors == -1) {
+			int colors = 0;
+			for (final Board.Connection connection : this.getReasonableConnections()) {
+				colors |= connection.isGray() ? ALL_COLORS : (1 << connection.getCardColor().ordinal());
+			}
+
+			this.reasonableColors = colors;
 		}
 
-		// replenish the face up with a random card if needed and possible
-		temp.colorDeck.replenishFaceUpRandomly();
+		return this.reasonableColors;
+	}
 
-		// generate all of the possible next states
-		final List<GameState> nextStates = new ArrayList<>();
+	/**
+	 * Forgets the reasonable connections and colors and the final scores, after a
+	 * change that they may depend on.
+	 */
+	private void clearCaches() {
+		this.reasonableConnections = null;
+		this.reasonableColors = -1;
+		this.finalScores = null;
+		this.winningPlayers = null;
+	}
 
-		// if this is a second turn of a color-drawing turn, create a state for each
-		// possible card to take (no face up wild allowed)
-		if (temp.haveAlreadyTakenColorCard) {
+	/**
+	 * Changes this state by making the given move for the current player.
+	 * 
+	 * @param move  The move to make
+	 * @param frame The frame to keep what the move cannot be undone without (the
+	 *              tickets it discards and the cards it pays)
+	 */
+	private void makeMove(final int move, final UndoFrame frame) {
+		final Player player = this.players[this.currentPlayerIndex];
 
-			if (temp.colorDeck.canDrawFromTop()) {
-				final TicketToRideState takeFromDrawPileCopy = new TicketToRideState(temp);
-				takeFromDrawPileCopy.players[takeFromDrawPileCopy.currentPlayerIndex]
-						.drawUnknownColorCardFromDeck(takeFromDrawPileCopy.colorDeck);
-				nextStates.add(takeFromDrawPileCopy);
+		switch (move & MOVE_TYPE_MASK) {
+		case END_GAME:
+			this.isGameOver = true;
+			break;
+		case PASS:
+			this.haveAlreadyTakenColorCard = false;
+			this.endTurn(player);
+			break;
+		case DRAW_TOP:
+			player.drawUnknownColorCardFromDeck(this.colorDeck);
+
+			if (this.haveAlreadyTakenColorCard) {
+				this.haveAlreadyTakenColorCard = false;
+				this.endTurn(player);
+			} else {
+				this.haveAlreadyTakenColorCard = true;
+				this.lastPlayerIndex = this.currentPlayerIndex;
 			}
-
-			// don't take a face up unless it helps with our tickets
-			final Set<Board.Connection> possibleConnectionsForPlayer = temp.board.getReasonableConnectionsForOwner(
-					temp.players[temp.currentPlayerIndex], temp.currentPlayerIndex, temp.players[temp.aiPlayerIndex],
-					temp.aiPlayerIndex);
-			final Set<String> reasonableColors = new HashSet<>();
-			for (final Board.Connection connection : possibleConnectionsForPlayer) {
-				reasonableColors.add(connection.getColor());
+			break;
+		case DRAW_FACE_UP:
+			final CardColor color = CardColor.get(move & DETAIL_MASK);
+			player.drawFaceUp(color, this.colorDeck);
+
+			if (this.haveAlreadyTakenColorCard) {
+				this.haveAlreadyTakenColorCard = false;
+				this.endTurn(player);
+			} else if (color == CardColor.WILD) {
+				this.endTurn(player);
+			} else {
+				this.haveAlreadyTakenColorCard = true;
+				this.lastPlayerIndex = this.currentPlayerIndex;
 			}
-
-			for (final String color : temp.colorDeck.getFaceUp().keySet()) {
-				if (!color.equals("WILD") && temp.colorDeck.getFaceUp().get(color) > 0
-						&& (reasonableColors.contains("GRAY") || reasonableColors.contains(color))) {
-					final TicketToRideState state = new TicketToRideState(temp);
-					state.players[state.currentPlayerIndex].drawFaceUp(color, state.colorDeck);
-					nextStates.add(state);
+			break;
+		case DRAW_TICKETS:
+			this.clearCaches();
+			player.drawThreeTickets(this.destinationTicketDeck);
+			this.haveAlreadyDrawnTickets = true;
+			this.lastPlayerIndex = this.currentPlayerIndex;
+			break;
+		case KEEP_TICKETS:
+			this.clearCaches();
+
+			// discard from the right so that the indices of the others do not change
+			final int numTickets = player.getNumKnownDestinationTickets();
+			for (int i = 2; i >= 0; i--) {
+				if ((move & (1 << i)) != 0) {
+					frame.discardedTickets[i] = player.getKnownDestinationTickets().get(numTickets - 3 + i);
+					player.discardKnownTicketAtIndex(numTickets - 3 + i, this.destinationTicketDeck);
 				}
 			}
 
-			for (final GameState state : nextStates) {
-				final TicketToRideState ticketToRideState = (TicketToRideState) state;
-
-				ticketToRideState.haveAlreadyTakenColorCard = false;
-				ticketToRideState.lastPlayerIndex = ticketToRideState.currentPlayerIndex;
-				ticketToRideState.currentPlayerIndex = ticketToRideState.getNextPlayer();
-
-				// if we are at less than 3 trains, then we must have been the one to get there
-				// first, so the game is over
-				if (temp.players[temp.currentPlayerIndex].getNumCarsRemaining() < 3) {
-					ticketToRideState.isGameOver = true;
-				}
+			if (!this.haveInitialTicketsBeenChosen) {
+				this.haveInitialTicketsBeenChosen = true;
+				this.lastPlayerIndex = this.currentPlayerIndex;
+				this.currentPlayerIndex = 0;
+			} else {
+				this.haveAlreadyDrawnTickets = false;
+				this.endTurn(player);
 			}
-
-			// if we can't do anything, just go to the next player
-			if (nextStates.isEmpty()) {
-				final TicketToRideState copy = new TicketToRideState(temp);
-				copy.haveAlreadyTakenColorCard = false;
-				copy.lastPlayerIndex = copy.currentPlayerIndex;
-				copy.currentPlayerIndex = copy.getNextPlayer();
-
-				// if we are at less than 3 trains, then we must have been the one to get there
-				// first, so the game is over
-				if (temp.players[temp.currentPlayerIndex].getNumCarsRemaining() < 3) {
-					copy.isGameOver = true;
-				}
-
-				nextStates.add(copy);
+			break;
+		case BUILD:
+			final Connection connection = this.board.getConnection((move >> CONNECTION_SHIFT) & CONNECTION_MASK);
+			final boolean isLastTurn = player.getNumCarsRemaining() < 3;
+			this.clearCaches();
+
+			if (!connection.isGray()) {
+				frame.numColorPaid = player.buildConnection(connection, this.board, this.colorDeck,
+						this.currentPlayerIndex, this.players.length);
+			} else {
+				frame.numColorPaid = player.buildGrayConnectionWithColor(connection, this.board,
+						CardColor.get(move & DETAIL_MASK), this.colorDeck, this.currentPlayerIndex,
+						this.players.length);
 			}
 
-			// pick one at random
-			final int randomIndex = (int) (Math.random() * nextStates.size());
-			return nextStates.get(randomIndex);
+			this.lastPlayerIndex = this.currentPlayerIndex;
+			this.currentPlayerIndex = this.getNextPlayer();
+			this.isGameOver = isLastTurn;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown move: " + move);
 		}
-		// if this is a second turn of a ticket-drawing turn, create a state for each
-		// possible combination of tickets to take
-		else if (temp.haveAlreadyDrawnTickets) {
-			final TicketToRideState copy1 = new TicketToRideState(temp);
-			final TicketToRideState copy2 = new TicketToRideState(temp);
-			final TicketToRideState copy3 = new TicketToRideState(temp);
-			final TicketToRideState copy4 = new TicketToRideState(temp);
-			final TicketToRideState copy5 = new TicketToRideState(temp);
-			final TicketToRideState copy6 = new TicketToRideState(temp);
-			final TicketToRideState copy7 = new TicketToRideState(temp);
-
-			// keep left
-			final Player copy1Player = copy1.players[copy1.currentPlayerIndex];
-			copy1Player.discardKnownTicketAtIndex(copy1Player.getNumKnownDestinationTickets() - 1,
-					copy1.destinationTicketDeck);
-			copy1Player.discardKnownTicketAtIndex(copy1Player.getNumKnownDestinationTickets() - 1,
-					copy1.destinationTicketDeck);
-
-			// keep middle
-			final Player copy2Player = copy2.players[copy2.currentPlayerIndex];
-			copy2Player.discardKnownTicketAtIndex(copy2Player.getNumKnownDestinationTickets() - 1,
-					copy2.destinationTicketDeck);
-			copy2Player.discardKnownTicketAtIndex(copy2Player.getNumKnownDestinationTickets() - 2,
-					copy2.destinationTicketDeck);
-
-			// keep right
-			final Player copy3Player = copy3.players[copy3.currentPlayerIndex];
-			copy3Player.discardKnownTicketAtIndex(copy3Player.getNumKnownDestinationTickets() - 2,
-					copy3.destinationTicketDeck);
-			copy3Player.discardKnownTicketAtIndex(copy3Player.getNumKnownDestinationTickets() - 2,
-					copy3.destinationTicketDeck);
-
-			// keep left and middle
-			final Player copy4Player = copy4.players[copy4.currentPlayerIndex];
-			copy4Player.discardKnownTicketAtIndex(copy4Player.getNumKnownDestinationTickets() - 1,
-					copy4.destinationTicketDeck);
-
-			// keep left and right
-			final Player copy5Player = copy5.players[copy5.currentPlayerIndex];
-			copy5Player.discardKnownTicketAtIndex(copy5Player.getNumKnownDestinationTickets() - 2,
-					copy5.destinationTicketDeck);
-
-			// keep middle and right
-			final Player copy6Player = copy6.players[copy6.currentPlayerIndex];
-			copy6Player.discardKnownTicketAtIndex(copy6Player.getNumKnownDestinationTickets() - 3,
-					copy6.destinationTicketDeck);
-
-			nextStates.add(copy1);
-			nextStates.add(copy2);
-			nextStates.add(copy3);
-			nextStates.add(copy4);
-			nextStates.add(copy5);
-			nextStates.add(copy6);
-			nextStates.add(copy7);
-
-			for (final GameState state : nextStates) {
-				final TicketToRideState ticketToRideState = (TicketToRideState) state;
-
-				ticketToRideState.haveAlreadyDrawnTickets = false;
-				ticketToRideState.lastPlayerIndex = ticketToRideState.currentPlayerIndex;
-				ticketToRideState.currentPlayerIndex = ticketToRideState.getNextPlayer();
-
-				// if we are at less than 3 trains, then we must have been the one to get there
-				// first, so the game is over
-				if (temp.players[temp.currentPlayerIndex].getNumCarsRemaining() < 3) {
-					ticketToRideState.isGameOver = true;
-				}
-			}
+	}
+
+	/**
+	 * Passes the turn on to the next player.
+	 * 
+	 * @param player The player whose turn is ending
+	 */
+	private void endTurn(final Player player) {
+		this.lastPlayerIndex = this.currentPlayerIndex;
+		this.currentPlayerIndex = this.getNextPlayer();
+		this.clearCaches();
 
-			// pick one at random
-			final int randomIndex = (int) (Math.random() * nextStates.size());
-			return nextStates.get(randomIndex);
+		// if we are at less than 3 trains, then we must have been the one to get there
+		// first, so the game is over
+		if (player.getNumCarsRemaining() < 3) {
+			this.isGameOver = true;
 		}
+	}
 
-		// if this is a first turn, make a state for each possible train placement, each
-		// possible color card, and drawing tickets
+	/**
+	 * Starts the frame of the next move with the flags and caches of this state.
+	 * The players and most of the decks are not saved: each change the move makes
+	 * to them is taken back on its own. A deck is only saved if the move may
+	 * shuffle it or refill the face up cards, which cannot be taken back one card
+	 * at a time.
+	 * 
+	 * @param move     The move that is about to be made
+	 * @param isRandom Whether the move is a random one, which is not known yet
+	 *                 (and may fill in unknown cards and face up cards first)
+	 * @return The frame that the state was saved into
+	 */
+	private UndoFrame pushUndoFrame(final int move, final boolean isRandom) {
+		if (this.numUndoFrames == this.undoFrames.size()) {
+			this.undoFrames.add(new UndoFrame(this));
+		}
 
-		// tickets (only allowed if all tickets are either completed OR not able to be
-		// completed)
-		// if this is a reasonable action, always take it
-		if (temp.players[temp.currentPlayerIndex].mayDrawTickets(temp.board, temp.currentPlayerIndex)
-				&& temp.destinationTicketDeck.canDrawThreeTickets()) {
-			final TicketToRideState copy = new TicketToRideState(temp);
-			copy.players[copy.currentPlayerIndex].drawThreeTickets(copy.destinationTicketDeck);
-			copy.haveAlreadyDrawnTickets = true;
-			copy.lastPlayerIndex = copy.currentPlayerIndex;
-
-			if (temp.players[temp.currentPlayerIndex].getNumCarsRemaining() > 6
-					|| (temp.currentPlayerIndex != temp.aiPlayerIndex
-							&& temp.players[temp.currentPlayerIndex].getNumCarsRemaining() > 12)) {
-				return copy;
+		final UndoFrame frame = this.undoFrames.get(this.numUndoFrames++);
+		frame.move = move;
+		frame.lastPlayerIndex = this.lastPlayerIndex;
+		frame.currentPlayerIndex = this.currentPlayerIndex;
+		frame.isGameOver = this.isGameOver;
+		frame.haveInitialTicketsBeenChosen = this.haveInitialTicketsBeenChosen;
+		frame.haveAlreadyTakenColorCard = this.haveAlreadyTakenColorCard;
+		frame.haveAlreadyDrawnTickets = this.haveAlreadyDrawnTickets;
+		frame.reasonableConnections = this.reasonableConnections;
+		frame.reasonableColors = this.reasonableColors;
+
+		// nothing is filled in for a move from the tree, so its fill records are left
+		// as they are and never read
+		frame.isRandom = isRandom;
+		if (isRandom) {
+			for (int i = 0; i < this.players.length; i++) {
+				Arrays.fill(frame.filledColorCards[i], 0);
+				frame.numFilledDestinationTickets[i] = 0;
 			}
-
-			nextStates.add(copy);
 		}
 
-		// train placements
-		final Set<Board.Connection> possibleConnectionsForPlayer = temp.board.getReasonableConnectionsForOwner(
-				temp.players[temp.currentPlayerIndex], temp.currentPlayerIndex, temp.players[temp.aiPlayerIndex],
-				temp.aiPlayerIndex);
+		final int moveType = move & MOVE_TYPE_MASK;
 
-		final boolean isLastTurn = temp.players[temp.currentPlayerIndex].getNumCarsRemaining() < 3;
+		frame.isColorDeckSaved = (isRandom && this.colorDeck.needsReplenishing())
+				|| ((isRandom || moveType == DRAW_TOP) && this.colorDeck.isDrawPileEmpty());
+		if (frame.isColorDeckSaved) {
+			frame.savedColorDeck.copyFrom(this.colorDeck);
+		}
 
-		for (final Board.Connection connection : possibleConnectionsForPlayer) {
-			if (temp.players[temp.currentPlayerIndex].canAffordConnection(connection)) {
-
-				if (!connection.getColor().equals("GRAY")) {
-					final TicketToRideState copy = new TicketToRideState(temp);
-					copy.players[copy.currentPlayerIndex].buildConnection(copy.board.getMatchingConnection(connection),
-							copy.board, copy.colorDeck, copy.currentPlayerIndex, copy.players.length);
-					copy.lastPlayerIndex = copy.currentPlayerIndex;
-					copy.currentPlayerIndex = copy.getNextPlayer();
-					copy.isGameOver = isLastTurn;
-					nextStates.add(copy);
-				} else {
-					for (final String color : ColorDeck.COLORS) {
-						if (!color.equals("WILD")) {
-							if (temp.players[temp.currentPlayerIndex].canAffordGrayWithColor(connection.getLength(),
-									color)) {
-								final TicketToRideState copy = new TicketToRideState(temp);
-								copy.players[copy.currentPlayerIndex].buildGrayConnectionWithColor(
-										copy.board.getMatchingConnection(connection), copy.board, color, copy.colorDeck,
-										copy.currentPlayerIndex, copy.players.length);
-								copy.lastPlayerIndex = copy.currentPlayerIndex;
-								copy.currentPlayerIndex = copy.getNextPlayer();
-								copy.isGameOver = isLastTurn;
-								nextStates.add(copy);
-							}
-						}
-					}
-				}
-			}
+		frame.isDestinationTicketDeckSaved = (isRandom || moveType == DRAW_TICKETS)
+				&& !this.destinationTicketDeck.canDrawThreeWithoutReshuffling();
+		if (frame.isDestinationTicketDeckSaved) {
+			frame.savedDestinationTicketDeck.copyFrom(this.destinationTicketDeck);
 		}
 
-		// color card choices
-		if (temp.colorDeck.canDrawFromTop()) {
-			final TicketToRideState takeFromDrawPileCopy = new TicketToRideState(temp);
-			takeFromDrawPileCopy.players[takeFromDrawPileCopy.currentPlayerIndex]
-					.drawUnknownColorCardFromDeck(takeFromDrawPileCopy.colorDeck);
-			takeFromDrawPileCopy.haveAlreadyTakenColorCard = true;
-			takeFromDrawPileCopy.lastPlayerIndex = takeFromDrawPileCopy.currentPlayerIndex;
-			nextStates.add(takeFromDrawPileCopy);
+		return frame;
+	}
+
+	@Override
+	public List<Integer> getWinningPlayers() {
+		if (!this.isGameOver) {
+			return Collections.emptyList();
 		}
 
-		// don't take a face up unless it helps with our tickets
-		final Set<String> reasonableColors = new HashSet<>();
-		for (final Board.Connection connection : possibleConnectionsForPlayer) {
-			reasonableColors.add(connection.getColor());
+		List<Integer> winningPlayers = this.winningPlayers;
+		if (winningPlayers != null) {
+			return winningPlayers;
 		}
 
-		for (final String color : temp.colorDeck.getFaceUp().keySet()) {
-			if (temp.colorDeck.getFaceUp().get(color) > 0 && (color.equals("WILD") || reasonableColors.contains(color)
-					|| reasonableColors.contains("GRAY"))) {
-				final TicketToRideState state = new TicketToRideState(temp);
-				state.players[state.currentPlayerIndex].drawFaceUp(color, state.colorDeck);
+		// Assumes that all players' destination tickets have been revealed
+		final FinalScores finalScores = this.getFinalScores();
+		final List<Integer> winners = new ArrayList<>();
 
-				if (color.equals("WILD")) {
-					state.isGameOver = state.players[state.currentPlayerIndex].getNumCarsRemaining() < 3;
-					state.lastPlayerIndex = state.currentPlayerIndex;
-					state.currentPlayerIndex = state.getNextPlayer();
-				} else {
-					state.haveAlreadyTakenColorCard = true;
-					state.lastPlayerIndex = state.currentPlayerIndex;
+		for (int i = 0; i < finalScores.getNumPlayers(); i++) {
+			if (winners.isEmpty()) {
+				winners.add(i);
+			} else {
+				final int bestPlayer = winners.get(0);
+
+				if (finalScores.getScore(i) > finalScores.getScore(bestPlayer)
+						|| (finalScores.getScore(i) == finalScores.getScore(bestPlayer) && finalScores
+								.getNumCompletedTickets(i) > finalScores.getNumCompletedTickets(bestPlayer))) {
+					winners.clear();
+					winners.add(i);
+				} else if (finalScores.getScore(i) == finalScores.getScore(bestPlayer)
+						&& finalScores.getNumCompletedTickets(i) == finalScores.getNumCompletedTickets(bestPlayer)) {
+					winners.add(i);
 				}
-				nextStates.add(state);
 			}
 		}
 
-		// if next states is somehow still empty, just end the game since there are no
-		// legal moves
-		if (nextStates.isEmpty()) {
-			final TicketToRideState copy = new TicketToRideState(temp);
-			copy.isGameOver = true;
-			nextStates.add(copy);
-		}
+		winningPlayers = Collections.unmodifiableList(winners);
+		this.winningPlayers = winningPlayers;
 
-		// pick one at random
-		final int randomIndex = (int) (Math.random() * nextStates.size());
-		return nextStates.get(randomIndex);
+		return winningPlayers;
 	}
 
-	@Override
-	public List<Integer> getWinningPlayers() {
-		final List<Integer> winningPlayers = new ArrayList<>();
-
+	/**
+	 * @return The end of game scoring of this state, which is left as it is (once
+	 *         the game is over, it is only worked out once)
+	 */
+	public FinalScores getFinalScores() {
 		if (!this.isGameOver) {
-			return winningPlayers;
+			return Scoring.getFinalScores(this.players, this.board, this.longestRoutePoints, this.globetrotterPoints);
 		}
 
-		// Assumes that all players' destination tickets have been revealed
-		if (!this.alreadyComputedScore) {
-			Scoring.doEndGameScoring(this.players, this.board, this.longestRoutePoints, this.globetrotterPoints);
-			this.alreadyComputedScore = true;
+		FinalScores finalScores = this.finalScores;
+		if (finalScores == null) {
+			finalScores = Scoring.getFinalScores(this.players, this.board, this.longestRoutePoints,
+					this.globetrotterPoints);
+			this.finalScores = finalScores;
 		}
 
+		return finalScores;
+	}
+
+	/**
+	 * @return Copies of the players with the end of game scoring done on them (the
+	 *         players of this state are left alone so that moves can still be
+	 *         undone)
+	 */
+	public Player[] getScoredPlayers() {
+		final Player[] scoredPlayers = new Player[this.players.length];
 		for (int i = 0; i < this.players.length; i++) {
-			if (winningPlayers.isEmpty()) {
-				winningPlayers.add(i);
-			} else {
-				final int indexOfBestPlayer = winningPlayers.get(0);
-				final Player bestPlayer = this.players[indexOfBestPlayer];
-				final Player contender = this.players[i];
-
-				if (contender.getScore() > bestPlayer.getScore() || (contender.getScore() == bestPlayer.getScore()
-						&& contender.getNumCompletedTickets() > bestPlayer.getNumCompletedTickets())) {
-					winningPlayers.clear();
-					winningPlayers.add(i);
-				} else if (contender.getScore() == bestPlayer.getScore()
-						&& contender.getNumCompletedTickets() == bestPlayer.getNumCompletedTickets()) {
-					winningPlayers.add(i);
-				}
-			}
+			scoredPlayers[i] = new Player(this.players[i]);
 		}
 
-		System.out.println();
-		System.out.println("Ending player = " + this.lastPlayerIndex);
-		for (final Player player : this.players) {
-			System.out.println(player.getScore() + " " + player.getNumCompletedTickets() + "/"
-					+ player.getNumKnownDestinationTickets());
-		}
+		Scoring.doEndGameScoring(scoredPlayers, this.board, this.longestRoutePoints, this.globetrotterPoints);
 
-		return winningPlayers;
+		return scoredPlayers;
+	}
+
+	@Override
+	public MoveGameState copy() {
+		return new TicketToRideState(this);
 	}
 
 	public void revealHumanDestinationTickets(final int aiPlayer, final Scanner in) {
@@ -825,10 +853,13 @@ public class TicketToRideState implements GameState {
 				}
 			}
 		}
+
+		this.clearCaches();
 	}
 
 	public void setCurrentPlayer(final int player) {
 		this.currentPlayerIndex = player;
+		this.clearCaches();
 	}
 
 	public void setLastPlayer(final int player) {
@@ -842,7 +873,7 @@ public class TicketToRideState implements GameState {
 		this.colorDeck.drawUnknownFromDeck();
 	}
 
-	public void giveCurrentHumanPlayerFaceUp(final String color) {
+	public void giveCurrentHumanPlayerFaceUp(final CardColor color) {
 		final Player player = this.players[this.currentPlayerIndex];
 
 		player.drawFaceUp(color, this.colorDeck);
@@ -854,13 +885,14 @@ public class TicketToRideState implements GameState {
 
 	public void setGameOver(final boolean isGameOver) {
 		this.isGameOver = isGameOver;
+		this.clearCaches();
 	}
 
 	public Board getBoard() {
 		return this.board;
 	}
 
-	public void buildConnectionForCurrentHumanPlayer(final Connection connection, final String colorPayed,
+	public void buildConnectionForCurrentHumanPlayer(final Connection connection, final CardColor colorPayed,
 			final long wilds) {
 		final Player player = this.players[this.currentPlayerIndex];
 		final boolean isLastTurn = player.getNumCarsRemaining() < 3;
@@ -871,9 +903,133 @@ public class TicketToRideState implements GameState {
 		this.lastPlayerIndex = this.currentPlayerIndex;
 		this.currentPlayerIndex = this.getNextPlayer();
 		this.isGameOver = isLastTurn;
+		this.clearCaches();
 	}
 
 	public Player[] getPlayers() {
 		return this.players;
 	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof TicketToRideState)) {
+			return false;
+		}
+
+		final TicketToRideState other = (TicketToRideState) obj;
+		return this.lastPlayerIndex == other.lastPlayerIndex && this.currentPlayerIndex == other.currentPlayerIndex
+				&& this.aiPlayerIndex == other.aiPlayerIndex && this.isGameOver == other.isGameOver
+				&& this.haveInitialTicketsBeenChosen == other.haveInitialTicketsBeenChosen
+				&& this.haveAlreadyTakenColorCard == other.haveAlreadyTakenColorCard
+				&& this.haveAlreadyDrawnTickets == other.haveAlreadyDrawnTickets
+				&& this.longestRoutePoints == other.longestRoutePoints
+				&& this.globetrotterPoints == other.globetrotterPoints && Arrays.equals(this.players, other.players)
+				&& this.colorDeck.equals(other.colorDeck)
+				&& this.destinationTicketDeck.equals(other.destinationTicketDeck) && this.board.equals(other.board);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(Arrays.hashCode(this.players), this.colorDeck, this.destinationTicketDeck, this.board,
+				this.lastPlayerIndex, this.currentPlayerIndex, this.isGameOver, this.haveAlreadyTakenColorCard,
+				this.haveAlreadyDrawnTickets);
+	}
+
+	/**
+	 * Everything needed to take back a single move that the move itself does not
+	 * say. Frames are reused, so once the stack has grown, applying and undoing
+	 * moves allocates nothing.
+	 */
+	private static class UndoFrame {
+		private int move;
+		private int lastPlayerIndex;
+		private int currentPlayerIndex;
+		private boolean isGameOver;
+		private boolean haveInitialTicketsBeenChosen;
+		private boolean haveAlreadyTakenColorCard;
+		private boolean haveAlreadyDrawnTickets;
+		private Set<Board.Connection> reasonableConnections;
+		private int reasonableColors;
+
+		// the tickets discarded by keeping tickets (by position among the last 3), and
+		// the number of cards of the paid color a build used (the rest were wilds)
+		private final DestinationTicket[] discardedTickets;
+		private int numColorPaid;
+
+		// the color cards (by ordinal) and the number of tickets that a random move
+		// filled in for each player
+		private boolean isRandom;
+		private final int[][] filledColorCards;
+		private final int[] numFilledDestinationTickets;
+
+		// the decks, only saved when the move may shuffle them or refill the face up
+		// cards
+		private boolean isColorDeckSaved;
+		private final ColorDeck savedColorDeck;
+		private boolean isDestinationTicketDeckSaved;
+		private final DestinationTicketDeck savedDestinationTicketDeck;
+
+		private UndoFrame(final TicketToRideState state) {
+			this.discardedTickets = new DestinationTicket[3];
+			this.filledColorCards = new int[state.players.length][CardColor.NUM_COLORS];
+			this.numFilledDestinationTickets = new int[state.players.length];
+			this.savedColorDeck = new ColorDeck(state.colorDeck);
+			this.savedDestinationTicketDeck = new DestinationTicketDeck(state.destinationTicketDeck);
+		}
+	}
+
+	/**
+	 * Receives the moves generated for a state. It either writes them into a
+	 * buffer, or keeps a single one of them chosen uniformly at random (reservoir
+	 * sampling), so that a random move can be picked in one pass without storing
+	 * the rest.
+	 */
+	private static class MoveCollector {
+		private int[] moves;
+		private SplittableRandom random;
+		private int numMoves;
+		private int sampledMove;
+
+		/**
+		 * Starts collecting moves into the given buffer.
+		 */
+		private void collectInto(final int[] moves) {
+			this.moves = moves;
+			this.random = null;
+			this.numMoves = 0;
+		}
+
+		/**
+		 * Starts sampling a single random move, picked with the given generator.
+		 */
+		private void sample(final SplittableRandom random) {
+			this.moves = null;
+			this.random = random;
+			this.numMoves = 0;
+		}
+
+		private void add(final int move) {
+			if (this.moves != null) {
+				this.moves[this.numMoves] = move;
+			}
+			// the k-th move replaces the sample with probability 1/k
+			else if (this.random.nextInt(this.numMoves + 1) == 0) {
+				this.sampledMove = move;
+			}
+
+			this.numMoves++;
+		}
+
+		private int size() {
+			return this.numMoves;
+		}
+
+		private int getSampledMove() {
+			return this.sampledMove;
+		}
+	}
 }
@@ -0,0 +1,58 @@
+package mcts;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import mcts.api.MoveGameState;
+import mcts.api.SearchBudget;
+import mcts.api.SearchListener;
+import mcts.tree.SearchSession;
+import state.TestGames;
+import state.TicketToRideState;
+
+/**
+ * Checks that a seeded search with a budget of iterations is repeatable.
+ */
+public class MCTSTest {
+
+	@Test
+	public void seededSearchWithAnIterationBudgetIsRepeatable() {
+		final TicketToRideState state = TestGames.newState();
+		final SearchBudget budget = SearchBudget.ofIterations(300);
+
+		final MoveGameState first = MCTS.search(state, budget, 1, SearchListener.NONE, 5L);
+		final MoveGameState second = MCTS.search(state, budget, 1, SearchListener.NONE, 5L);
+
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void seededRootParallelSearchWithAnIterationBudgetIsRepeatable() {
+		final TicketToRideState state = TestGames.newState();
+		final SearchBudget budget = SearchBudget.ofIterations(400);
+
+		final MoveGameState first = MCTS.search(state, budget, 4, SearchListener.NONE, 5L);
+		final MoveGameState second = MCTS.search(state, budget, 4, SearchListener.NONE, 5L);
+
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void seededSessionWithAnIterationBudgetIsRepeatable() {
+		final SearchBudget budget = SearchBudget.ofIterations(200);
+		final SearchSession firstSession = MCTS.startSession(budget, 1, SearchListener.NONE, 5L);
+		final SearchSession secondSession = MCTS.startSession(budget, 1, SearchListener.NONE, 5L);
+
+		// the second search of each session is split from the same generator as well
+		final TicketToRideState state = TestGames.newState();
+		MoveGameState first = state;
+		MoveGameState second = state;
+		for (int i = 0; i < 2; i++) {
+			first = firstSession.search(first);
+			second = secondSession.search(second);
+
+			assertEquals(first, second);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package mcts.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import mcts.api.SearchBudget;
+import mcts.api.SearchListener;
+import state.TestGames;
+import state.TicketToRideState;
+
+/**
+ * Checks that the node cap of a budget stops the tree from growing without
+ * ending the search.
+ */
+public class MCTreeTest {
+
+	@Test
+	public void nodeCapStopsGrowthButNotTheSearch() {
+		final TicketToRideState state = TestGames.newState();
+		final int maxNodes = 50;
+		final MCTree tree = new MCTree(state, SearchBudget.ofIterations(500).withMaxNodes(maxNodes), 1,
+				SearchListener.NONE, 7L);
+
+		final MCNode move = tree.searchForMove(1);
+
+		// every iteration still ran, and the tree went over the cap by no more than
+		// the children of the last node expanded
+		int numIterations = 0;
+		for (final MCNode child : tree.getRootChildren()) {
+			numIterations += child.getNumIterations();
+		}
+
+		assertEquals(500, numIterations);
+		assertTrue(move.getNumIterations() > 0);
+		assertTrue("tree has " + tree.getNumNodes() + " nodes",
+				tree.getNumNodes() <= maxNodes + state.getMaxNumMoves());
+	}
+}
@@ -0,0 +1,79 @@
+package state;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import state.Board.Connection;
+
+/**
+ * Checks the longest route of each player against a search of every trail
+ * through the connections they own.
+ */
+public class LongestRoutesTest {
+
+	@Test
+	public void longestRouteMatchesAnExhaustiveSearch() {
+		for (int seed = 0; seed < 200; seed++) {
+			final Board board = TestGames.newBoard(2);
+			final Random random = new Random(seed);
+			final int numClaims = 5 + random.nextInt(40);
+
+			for (int i = 0; i < numClaims; i++) {
+				TestGames.claimRandomConnection(board, i % 2, 2, random);
+
+				// some of the routes are worked out part way through, so later ones
+				// start from what was kept
+				if (random.nextInt(4) == 0) {
+					board.getLongestRouteLengthForPlayer(i % 2);
+				}
+			}
+
+			final Board copy = new Board(board);
+
+			for (int player = 0; player < 2; player++) {
+				final int expected = getLongestTrail(board, player);
+				assertEquals("seed " + seed + ", player " + player, expected,
+						board.getLongestRouteLengthForPlayer(player));
+				assertEquals("copy of seed " + seed + ", player " + player, expected,
+						copy.getLongestRouteLengthForPlayer(player));
+			}
+		}
+	}
+
+	private static int getLongestTrail(final Board board, final int player) {
+		final boolean[] used = new boolean[board.getNumConnections()];
+		int longest = 0;
+
+		for (int city = 0; city < board.getNumCities(); city++) {
+			longest = Math.max(longest, getLongestTrailFrom(board, player, city, used));
+		}
+
+		return longest;
+	}
+
+	private static int getLongestTrailFrom(final Board board, final int player, final int city,
+			final boolean[] used) {
+		int longest = 0;
+
+		for (int i = 0; i < board.getNumConnections(); i++) {
+			final Connection connection = board.getConnection(i);
+
+			if (used[i] || board.getOwner(connection) != player
+					|| (connection.getStartId() != city && connection.getEndId() != city)) {
+				continue;
+			}
+
+			final int otherCity = (connection.getStartId() == city) ? connection.getEndId() : connection.getStartId();
+
+			used[i] = true;
+			longest = Math.max(longest,
+					(int) connection.getLength() + getLongestTrailFrom(board, player, otherCity, used));
+			used[i] = false;
+		}
+
+		return longest;
+	}
+}
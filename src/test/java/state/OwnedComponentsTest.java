@@ -0,0 +1,54 @@
+package state;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import state.Board.Connection;
+
+/**
+ * Checks which tickets the board considers complete against a search over the
+ * connections each player owns.
+ */
+public class OwnedComponentsTest {
+
+	@Test
+	public void completedTicketsFollowClaimsAndGiveBacks() {
+		final int numPlayers = 2;
+		final Board board = TestGames.newBoard(numPlayers);
+		final Random random = new Random(1);
+		final List<Connection> claimed = new ArrayList<>();
+		final List<Integer> owners = new ArrayList<>();
+
+		for (int step = 0; step < 300; step++) {
+			if (!claimed.isEmpty() && random.nextInt(3) == 0) {
+				// undoing in the middle of the claims splits components apart again
+				final int index = random.nextInt(claimed.size());
+				board.takeOwnershipFromPlayer(claimed.remove(index), owners.remove(index), numPlayers);
+			} else {
+				final int player = step % numPlayers;
+				final Connection connection = TestGames.claimRandomConnection(board, player, numPlayers, random);
+
+				if (connection != null) {
+					claimed.add(connection);
+					owners.add(player);
+				}
+			}
+
+			for (int owner = 0; owner < numPlayers; owner++) {
+				for (int start = step % 3; start < board.getNumCities(); start += 3) {
+					final boolean[] reach = TestGames.getOwnedReach(board, start, owner);
+
+					for (int end = 0; end < board.getNumCities(); end++) {
+						assertEquals(board.getCityName(start) + " - " + board.getCityName(end) + " for " + owner,
+								reach[end], board.isCompleteTicket(start, end, owner));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package state;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import state.Board.Connection;
+
+/**
+ * Checks the train distances the board keeps current, and the connection
+ * distances it searches for, against a fresh search of the whole map.
+ */
+public class PathDistancesTest {
+
+	@Test
+	public void distancesStayCurrentAsConnectionsAreClaimedAndGivenBack() {
+		for (int numPlayers = 2; numPlayers <= 3; numPlayers++) {
+			final Board board = TestGames.newBoard(numPlayers);
+			final Random random = new Random(numPlayers);
+			final List<Connection> claimed = new ArrayList<>();
+			final List<Integer> owners = new ArrayList<>();
+
+			for (int step = 0; step < 150; step++) {
+				if (!claimed.isEmpty() && random.nextInt(3) == 0) {
+					// give back any connection, not just the last one
+					final int index = random.nextInt(claimed.size());
+					board.takeOwnershipFromPlayer(claimed.remove(index), owners.remove(index), numPlayers);
+				} else {
+					final int player = step % numPlayers;
+					final Connection connection = TestGames.claimRandomConnection(board, player, numPlayers, random);
+
+					if (connection != null) {
+						claimed.add(connection);
+						owners.add(player);
+					}
+				}
+
+				assertDistances(board, numPlayers, (step % 7 == 0) ? 1 : 5);
+			}
+		}
+	}
+
+	@Test
+	public void copiedBoardHasTheSameDistances() {
+		final Board board = TestGames.newBoard(2);
+		final Random random = new Random(0);
+
+		for (int i = 0; i < 40; i++) {
+			TestGames.claimRandomConnection(board, i % 2, 2, random);
+
+			// ask for some distances so that the copy has something cached
+			board.getMinTrainsBetween(i % board.getNumCities(), 0, i % 2);
+		}
+
+		final Board copy = new Board(board);
+		assertEquals(board, copy);
+		assertDistances(copy, 2, 1);
+	}
+
+	private static void assertDistances(final Board board, final int numPlayers, final int startStep) {
+		for (int owner = 0; owner < numPlayers; owner++) {
+			for (int start = 0; start < board.getNumCities(); start += startStep) {
+				final int[] trains = TestGames.getDistances(board, start, owner, true);
+				final int[] connections = TestGames.getDistances(board, start, owner, false);
+
+				for (int end = 0; end < board.getNumCities(); end++) {
+					final String message = board.getCityName(start) + " - " + board.getCityName(end) + " for " + owner;
+					assertEquals(message, trains[end], board.getMinTrainsBetween(start, end, owner));
+					assertEquals(message, connections[end], board.getMinConnectionsBetween(start, end, owner));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package state;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import state.Board.Connection;
+
+/**
+ * Builds boards and game states from the base config for the tests, and works
+ * out the answers the incremental board code should give the slow way.
+ */
+public final class TestGames {
+
+	private static final String CONFIG_FILE = "src/config/base.json";
+
+	// the starting hand of the AI in every game made by newState
+	private static final CardColor[] AI_COLOR_CARDS = { CardColor.RED, CardColor.RED, CardColor.BLUE,
+			CardColor.WILD };
+	private static final String[] AI_TICKETS = { "BOSTON", "MIAMI", "DENVER", "EL PASO", "DULUTH", "HOUSTON" };
+
+	private static JSONObject config;
+
+	private TestGames() {
+	}
+
+	private static synchronized JSONObject getConfig() {
+		if (config == null) {
+			try (final FileReader reader = new FileReader(CONFIG_FILE)) {
+				config = (JSONObject) new JSONParser().parse(reader);
+			} catch (final IOException | ParseException e) {
+				throw new IllegalStateException("Could not read " + CONFIG_FILE, e);
+			}
+		}
+
+		return config;
+	}
+
+	/**
+	 * @return An empty board with the map of the base config
+	 */
+	public static Board newBoard(final int numPlayers) {
+		final Board board = new Board(numPlayers);
+
+		for (final Object connectionObj : (JSONArray) getConfig().get("connections")) {
+			final JSONObject connectionJSONObj = (JSONObject) connectionObj;
+
+			board.addConnection((String) connectionJSONObj.get("START"), (String) connectionJSONObj.get("END"),
+					(Long) connectionJSONObj.get("LENGTH"), (String) connectionJSONObj.get("COLOR"));
+		}
+
+		return board;
+	}
+
+	/**
+	 * Sets up a game the way {@link TicketToRideState#dealStartingHands} and
+	 * {@link TicketToRideState#getNumDestinationTicketsForHumanPlayers} would,
+	 * without asking for anything on the console: the face up cards are drawn
+	 * with a fixed seed, and the AI's cards and tickets are always the same.
+	 *
+	 * @return A two player game of the base config, where player 0 is the AI and
+	 *         has been dealt its starting hand, and player 1 kept two tickets
+	 */
+	public static TicketToRideState newState() {
+		final JSONObject obj = getConfig();
+
+		final ColorDeck colorDeck = new ColorDeck();
+		for (final Object entryObj : ((Map<?, ?>) obj.get("deckDistribution")).entrySet()) {
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryObj;
+			colorDeck.initColor(CardColor.valueOf((String) entry.getKey()), (Long) entry.getValue());
+		}
+
+		final DestinationTicketDeck destinationTicketDeck = new DestinationTicketDeck();
+		for (final Object ticketObj : (JSONArray) obj.get("destinationTickets")) {
+			final JSONObject ticketJSONObj = (JSONObject) ticketObj;
+
+			destinationTicketDeck.initDestinationTicket((String) ticketJSONObj.get("START"),
+					(String) ticketJSONObj.get("END"), (Long) ticketJSONObj.get("POINTS"));
+		}
+
+		final TicketToRideState state = new TicketToRideState(2, 0, (Long) obj.get("numCarsPerPlayer"), colorDeck,
+				destinationTicketDeck, newBoard(2), 10, 15);
+		final Player[] players = state.getPlayers();
+
+		for (final Player player : players) {
+			colorDeck.dealStartingFourToPlayer(player);
+		}
+		colorDeck.replenishFaceUpRandomly(new SplittableRandom(0));
+
+		for (final Player player : players) {
+			destinationTicketDeck.dealStartingThreeToPlayer(player);
+		}
+
+		for (final CardColor color : AI_COLOR_CARDS) {
+			players[0].convertUnknownColorCardToKnownManually(color, colorDeck);
+		}
+
+		for (int i = 0; i < AI_TICKETS.length; i += 2) {
+			players[0].convertUnknownDestinationTicketToKnownManually(
+					destinationTicketDeck.getTicket(AI_TICKETS[i], AI_TICKETS[i + 1]), destinationTicketDeck);
+		}
+
+		players[1].setNumUnknownDestinationTickets(2);
+		destinationTicketDeck.addDiscards(1);
+
+		return state;
+	}
+
+	/**
+	 * Gives a random open connection to the given player, if it may take it.
+	 *
+	 * @return The connection, or null if the player could not take it
+	 */
+	public static Connection claimRandomConnection(final Board board, final int player, final int numPlayers,
+			final Random random) {
+		final Connection connection = board.getConnection(random.nextInt(board.getNumConnections()));
+
+		if (board.getOwner(connection) != -1 || board.isForbiddenForPlayer(connection, player)) {
+			return null;
+		}
+
+		board.giveOwnershipToPlayer(connection, player, numPlayers);
+		return connection;
+	}
+
+	/**
+	 * Works out the distance from the given city to every city with Bellman-Ford
+	 * over all of the connections, using the same costs as the board: nothing for
+	 * the owner's connections, the length (or 1) for open ones and 1000 for the
+	 * rest.
+	 *
+	 * @return The distances, 1000 for the cities the owner cannot reach
+	 */
+	public static int[] getDistances(final Board board, final int start, final int owner,
+			final boolean countTrains) {
+		final int[] distances = getDistances(board, start, (connection) -> {
+			if (board.isForbiddenForPlayer(connection, owner)) {
+				return 1000;
+			} else if (board.getOwner(connection) == -1) {
+				return countTrains ? (int) connection.getLength() : 1;
+			} else if (board.getOwner(connection) != owner) {
+				return 1000;
+			}
+
+			return 0;
+		});
+
+		for (int city = 0; city < distances.length; city++) {
+			distances[city] = Math.min(distances[city], 1000);
+		}
+
+		return distances;
+	}
+
+	/**
+	 * @return Whether each city can be reached from the given city using only the
+	 *         owner's connections
+	 */
+	public static boolean[] getOwnedReach(final Board board, final int start, final int owner) {
+		final int[] distances = getDistances(board, start,
+				(connection) -> (board.getOwner(connection) == owner) ? 0 : Integer.MAX_VALUE);
+		final boolean[] reach = new boolean[distances.length];
+
+		for (int city = 0; city < distances.length; city++) {
+			reach[city] = distances[city] == 0;
+		}
+
+		return reach;
+	}
+
+	private interface Cost {
+		int of(Connection connection);
+	}
+
+	private static int[] getDistances(final Board board, final int start, final Cost cost) {
+		final int numCities = board.getNumCities();
+		final int[] distances = new int[numCities];
+		Arrays.fill(distances, Integer.MAX_VALUE);
+		distances[start] = 0;
+
+		for (int i = 0; i < numCities; i++) {
+			for (int j = 0; j < board.getNumConnections(); j++) {
+				final Connection connection = board.getConnection(j);
+				final int weight = cost.of(connection);
+
+				if (weight != Integer.MAX_VALUE) {
+					relax(distances, connection.getStartId(), connection.getEndId(), weight);
+					relax(distances, connection.getEndId(), connection.getStartId(), weight);
+				}
+			}
+		}
+
+		return distances;
+	}
+
+	private static void relax(final int[] distances, final int from, final int to, final int weight) {
+		if (distances[from] != Integer.MAX_VALUE && distances[from] + weight < distances[to]) {
+			distances[to] = distances[from] + weight;
+		}
+	}
+}
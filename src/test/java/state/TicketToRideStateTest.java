@@ -0,0 +1,126 @@
+package state;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import scoring.FinalScores;
+import scoring.Scoring;
+
+/**
+ * Checks that undoing moves puts a state back exactly as it was, and that the
+ * scores it keeps once the game is over match a fresh scoring.
+ */
+public class TicketToRideStateTest {
+
+	private static final int MAX_NUM_MOVES = 4000;
+
+	@Test
+	public void undoRestoresEveryState() {
+		final TicketToRideState state = TestGames.newState();
+		final SplittableRandom random = new SplittableRandom(1);
+
+		for (int game = 0; game < 40; game++) {
+			final List<TicketToRideState> before = new ArrayList<>();
+			final int[] moves = new int[MAX_NUM_MOVES];
+			int numMoves = 0;
+
+			// mix the moves of the tree with random ones, which fill in unknown cards and
+			// refill the face up cards first
+			while (state.getWinningPlayers().isEmpty() && numMoves < MAX_NUM_MOVES) {
+				before.add((TicketToRideState) state.copy());
+
+				final int[] legalMoves = getLegalMoves(state);
+				if (legalMoves.length > 0 && random.nextInt(3) == 0) {
+					moves[numMoves] = legalMoves[random.nextInt(legalMoves.length)];
+					state.apply(moves[numMoves++]);
+				} else {
+					moves[numMoves++] = state.applyRandomMove(random);
+				}
+			}
+
+			while (numMoves > 0) {
+				state.undo(moves[--numMoves]);
+
+				final TicketToRideState expected = before.get(numMoves);
+				assertEquals("after undoing move " + numMoves + " of game " + game, expected, state);
+				assertArrayEquals("moves after undoing move " + numMoves + " of game " + game,
+						getLegalMoves(expected), getLegalMoves(state));
+			}
+		}
+	}
+
+	@Test
+	public void finalScoresMatchAFreshScoring() {
+		final TicketToRideState state = TestGames.newState();
+		final SplittableRandom random = new SplittableRandom(2);
+		final Random undoRandom = new Random(2);
+
+		for (int game = 0; game < 50; game++) {
+			final int[] moves = new int[MAX_NUM_MOVES];
+			int numMoves = 0;
+
+			// finish the game, then back up a few moves and finish it again, so that the
+			// kept scores have to be thrown away on undo
+			for (int replay = 0; replay < 5; replay++) {
+				while (state.getWinningPlayers().isEmpty() && numMoves < MAX_NUM_MOVES) {
+					moves[numMoves++] = state.applyRandomMove(random);
+				}
+
+				final FinalScores scores = state.getFinalScores();
+				final FinalScores fresh = Scoring.getFinalScores(state.getPlayers(), state.getBoard(), 10, 15);
+
+				for (int player = 0; player < 2; player++) {
+					assertEquals(fresh.getScore(player), scores.getScore(player));
+					assertEquals(fresh.getNumCompletedTickets(player), scores.getNumCompletedTickets(player));
+				}
+
+				assertEquals(getExpectedWinners(fresh), state.getWinningPlayers());
+
+				for (int i = 1 + undoRandom.nextInt(6); i > 0 && numMoves > 0; i--) {
+					state.undo(moves[--numMoves]);
+				}
+			}
+
+			while (numMoves > 0) {
+				state.undo(moves[--numMoves]);
+			}
+		}
+	}
+
+	/**
+	 * @return The players with the highest score, ties broken by the number of
+	 *         completed tickets
+	 */
+	private static List<Integer> getExpectedWinners(final FinalScores scores) {
+		final List<Integer> winners = new ArrayList<>();
+		long best = Long.MIN_VALUE;
+
+		for (int player = 0; player < 2; player++) {
+			final long key = scores.getScore(player) * 1000L + scores.getNumCompletedTickets(player);
+
+			if (key > best) {
+				winners.clear();
+				best = key;
+			}
+
+			if (key == best) {
+				winners.add(player);
+			}
+		}
+
+		return winners;
+	}
+
+	private static int[] getLegalMoves(final TicketToRideState state) {
+		final int[] moves = new int[state.getMaxNumMoves()];
+		return Arrays.copyOf(moves, state.getLegalMoves(moves));
+	}
+}